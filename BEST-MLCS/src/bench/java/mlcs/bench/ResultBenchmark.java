@@ -0,0 +1,85 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs.bench;
+
+import mlcs.Graph;
+import mlcs.Mlcs;
+import mlcs.Result;
+import mlcs.ResultFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and parsing the result file of a searched problem,in the text and the binary format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultBenchmark {
+
+  @Param({"50", "100"})
+  public int length;
+
+  @Param({"3", "5"})
+  public int count;
+
+  @Param({"4", "20"})
+  public int alphabet;
+
+  @Param({"text", "binary"})
+  public String format;
+
+  Result result;
+  Path dir;
+  String file;
+
+  @Setup
+  public void setup() throws IOException {
+    Mlcs mlcs = Mlcs.build(Workload.sequences(length, count, alphabet));
+    Graph graph = Workload.search(mlcs, Workload.lowerBound(mlcs));
+    graph.cleanup();
+    result = graph.stat(graph.created(), graph.created(), System.currentTimeMillis());
+    dir = Files.createTempDirectory("mlcs-bench");
+    file = dir.resolve("result" + (format.equals("binary") ? ResultFile.Extension : ".txt")).toString();
+    result.dumpTo(file);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(Path.of(file));
+    Files.deleteIfExists(dir);
+  }
+
+  @Benchmark
+  public void dumpTo() {
+    result.dumpTo(file);
+  }
+
+  @Benchmark
+  public Result parse() {
+    return Result.parse(file);
+  }
+}
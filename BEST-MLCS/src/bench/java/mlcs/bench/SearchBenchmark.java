@@ -0,0 +1,92 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs.bench;
+
+import mlcs.Graph;
+import mlcs.Mlcs;
+import mlcs.Result;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Layer expansion of the search,graph cleanup and path counting.
+ * The search uses the lower bound of the estimator like BestMLCS.main,
+ * cleanup gets a freshly searched graph every invocation,as it modifies the graph.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+
+  @Param({"50", "100"})
+  public int length;
+
+  @Param({"3", "5"})
+  public int count;
+
+  @Param({"4", "20"})
+  public int alphabet;
+
+  Mlcs mlcs;
+  int lowerBound;
+  // the searched and cleaned graph
+  Graph graph;
+
+  @Setup
+  public void setup() {
+    mlcs = Mlcs.build(Workload.sequences(length, count, alphabet));
+    lowerBound = Workload.lowerBound(mlcs);
+    graph = Workload.search(mlcs, lowerBound);
+    graph.cleanup();
+  }
+
+  @Benchmark
+  public Graph expand() {
+    return Workload.search(mlcs, lowerBound);
+  }
+
+  @Benchmark
+  public Result stat() {
+    return graph.stat(graph.created(), graph.created(), 0);
+  }
+
+  /**
+   * A graph searched at every invocation,only cleanup is timed.
+   * The gc profiler samples whole iterations,so the allocation rate of cleanup includes this search.
+   */
+  @State(Scope.Thread)
+  public static class Searched {
+    Graph graph;
+
+    @Setup(Level.Invocation)
+    public void setup(SearchBenchmark bench) {
+      graph = Workload.search(bench.mlcs, bench.lowerBound);
+    }
+  }
+
+  @Benchmark
+  public Graph cleanup(Searched searched) {
+    searched.graph.cleanup();
+    return searched.graph;
+  }
+}
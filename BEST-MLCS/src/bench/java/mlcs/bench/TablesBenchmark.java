@@ -0,0 +1,108 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs.bench;
+
+import mlcs.Alphabet;
+import mlcs.Mlcs;
+import mlcs.NodeStore;
+import mlcs.Sequence;
+import mlcs.SuccessorTables;
+import mlcs.util.TableBenchmark;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Successor generation,tail upbounds and table construction.
+ * The probes run over key points sampled along a beam from start to end,as TableBenchmark does,
+ * so one operation is one sweep over all samples.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TablesBenchmark {
+
+  @Param({"200", "1000"})
+  public int length;
+
+  @Param({"3", "5"})
+  public int count;
+
+  @Param({"4", "20"})
+  public int alphabet;
+
+  @Param({"jagged"})
+  public String layout;
+
+  String[] strs;
+  Mlcs mlcs;
+  NodeStore samples;
+  // successors of all samples
+  int[][] successors;
+  int[] current;
+  int[][] nexts;
+
+  @Setup
+  public void setup() {
+    strs = Workload.sequences(length, count, alphabet);
+    mlcs = Mlcs.build(strs, SuccessorTables.Layout.of(layout));
+    samples = TableBenchmark.sample(mlcs, 500);
+    current = new int[count];
+    nexts = mlcs.newBuffer();
+    List<int[]> all = new ArrayList<>();
+    for (int h = 0; h < samples.size(); h++) {
+      int n = mlcs.nextLocations(samples.coords(h, current), nexts);
+      for (int i = 0; i < n; i++) all.add(nexts[i].clone());
+    }
+    successors = all.toArray(new int[0][]);
+  }
+
+  @Benchmark
+  public long nextLocations() {
+    long checksum = 0;
+    for (int h = 0; h < samples.size(); h++) {
+      int n = mlcs.nextLocations(samples.coords(h, current), nexts);
+      for (int i = 0; i < n; i++) checksum += nexts[i][0];
+    }
+    return checksum;
+  }
+
+  @Benchmark
+  public long tailUpbound() {
+    long checksum = 0;
+    for (int[] successor : successors) checksum += mlcs.tailUpbound(successor);
+    return checksum;
+  }
+
+  /**
+   * The Mlcs constructor over fresh sequences,so the sequence tables are built instead of taken from the cache
+   */
+  @Benchmark
+  public Mlcs build() {
+    Alphabet chars = Alphabet.of(strs);
+    List<Sequence> seqs = new ArrayList<>(strs.length);
+    for (String str : strs) seqs.add(Sequence.build(str, chars));
+    return new Mlcs(chars, seqs, SuccessorTables.Layout.of(layout));
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs.bench;
+
+import mlcs.BestMLCS;
+import mlcs.Graph;
+import mlcs.LowerBoundEstimator;
+import mlcs.Mlcs;
+import mlcs.util.Generator;
+
+/**
+ * Seeded random sequences of the benchmark parameters,so every fork measures the same problem.
+ */
+final class Workload {
+  static final long Seed = 20050101L;
+
+  private Workload() {
+  }
+
+  /**
+   * Random sequences of the generator,the same as Generator writes for these parameters and seed
+   */
+  static String[] sequences(int length, int count, int alphabet) {
+    return new Generator(Generator.Family.Random, length, count, alphabet, Seed).generate();
+  }
+
+  /**
+   * The lower bound BestMLCS.main would search with
+   */
+  static int lowerBound(Mlcs mlcs) {
+    return LowerBoundEstimator.estimate(mlcs, mlcs.maxLength, null, false, LowerBoundEstimator.Scorer.Sum);
+  }
+
+  static Graph search(Mlcs mlcs, int lowerBound) {
+    BestMLCS search = new BestMLCS(mlcs, lowerBound);
+    search.verbose = false;
+    return search.search();
+  }
+}
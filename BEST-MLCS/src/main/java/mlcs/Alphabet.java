@@ -0,0 +1,108 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Dense codes of the characters of a problem.
+ * Symbols are sorted,the code of a symbol is its index,so tables indexed by codes need no map.
+ */
+public final class Alphabet {
+  // code -> symbol in ascending order
+  final char[] symbols;
+  // symbol -> code,-1 for absent symbols
+  private final short[] codes;
+
+  private Alphabet(char[] symbols) {
+    this.symbols = symbols;
+    int max = symbols.length == 0 ? 0 : symbols[symbols.length - 1];
+    this.codes = new short[max + 1];
+    Arrays.fill(codes, (short) -1);
+    for (int i = 0; i < symbols.length; i++) codes[symbols[i]] = (short) i;
+  }
+
+  public int size() {
+    return symbols.length;
+  }
+
+  public char symbol(int code) {
+    return symbols[code];
+  }
+
+  /**
+   * Code of the symbol,or -1 if it is not in the alphabet
+   */
+  public int code(char c) {
+    return c < codes.length ? codes[c] : -1;
+  }
+
+  /**
+   * Two bits are enough for every code,as for DNA
+   */
+  public boolean packable() {
+    return symbols.length <= 4;
+  }
+
+  /**
+   * Symbols of all strings
+   */
+  public static Alphabet of(String... strs) {
+    boolean[] seen = new boolean[Character.MAX_VALUE + 1];
+    int count = 0;
+    for (String str : strs) {
+      for (int i = 0; i < str.length(); i++) {
+        char c = str.charAt(i);
+        if (!seen[c]) {
+          seen[c] = true;
+          count += 1;
+        }
+      }
+    }
+    char[] symbols = new char[count];
+    for (int c = 0, i = 0; i < count; c++) {
+      if (seen[c]) symbols[i++] = (char) c;
+    }
+    return new Alphabet(symbols);
+  }
+
+  public static Alphabet of(Collection<Character> chars) {
+    char[] symbols = new char[chars.size()];
+    int i = 0;
+    for (Character c : chars) symbols[i++] = c;
+    Arrays.sort(symbols);
+    return new Alphabet(symbols);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof Alphabet && Arrays.equals(symbols, ((Alphabet) o).symbols);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(symbols);
+  }
+
+  @Override
+  public String toString() {
+    return new String(symbols);
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Solve the MLCS problem within a time and heap budget.
+ * Beams of growing width improve the best common subsequence with a third of the time,
+ * then the exact search runs with the rest of the budget and the best beam length as its lower bound.
+ * When the exact search is stopped,the best subsequence is returned with an upper bound proven by the search frontier.
+ */
+public class AnytimeMLCS {
+  static final int InitialWidth = 16;
+
+  private final Mlcs mlcs;
+  private final long timeBudget;
+  private final long heapBudget;
+  private final ForkJoinPool pool;
+
+  /**
+   * @param timeBudget millis,0 for unlimited
+   * @param heapBudget used heap in bytes,0 for 90% of the max heap
+   * @param pool       null for sequential
+   */
+  public AnytimeMLCS(Mlcs mlcs, long timeBudget, long heapBudget, ForkJoinPool pool) {
+    this.mlcs = mlcs;
+    this.timeBudget = timeBudget;
+    this.heapBudget = heapBudget > 0 ? heapBudget : (long) (Runtime.getRuntime().maxMemory() * 0.9);
+    this.pool = pool;
+  }
+
+  public Result solve() {
+    long startAt = System.currentTimeMillis();
+    long deadline = timeBudget > 0 ? startAt + timeBudget : 0;
+    long beamDeadline = timeBudget > 0 ? startAt + timeBudget / 3 : 0;
+    int upper = mlcs.tailUpbound(mlcs.start.id);
+
+    String best = "";
+    int width = InitialWidth;
+    while (best.length() < upper && width <= Math.max(InitialWidth, mlcs.maxLength)) {
+      var witness = LowerBoundEstimator.witness(mlcs, width, pool, LowerBoundEstimator.Scorer.TailUpbound,
+        beamDeadline);
+      if (null == witness) break;
+      System.out.println("beam width " + width + " found length " + witness.length());
+      if (witness.length() > best.length()) best = witness;
+      width *= 4;
+    }
+
+    if (best.length() < upper) {
+      var search = new BestMLCS(mlcs, best.length());
+      search.deadline = deadline;
+      search.heapLimit = heapBudget;
+      Graph graph = (null == pool) ? search.search() : search.search(pool);
+      if (search.abortedAt < 0) {
+        graph.cleanup(pool);
+        return graph.stat(graph.created(), graph.created(), startAt);
+      }
+      upper = Math.min(upper, frontierBound(graph, search.abortedAt));
+      System.out.println("budget ran out at layer " + search.abortedAt + ",upper bound " + upper);
+    }
+    return Result.of(mlcs, best, Math.max(upper, best.length()), startAt);
+  }
+
+  /**
+   * All levels below k are expanded,so every common subsequence passes a point of level k or k+1,
+   * and is no longer than the level plus the tail upbound of that point.
+   */
+  private int frontierBound(Graph graph, int k) {
+    int bound = 0;
+    int[] id = new int[mlcs.seqs.size()];
+    for (int l = k; l <= k + 1 && l < graph.maxLevel + 2; l++) {
+      for (int n : graph.getLevel(l)) {
+        bound = Math.max(bound, l + mlcs.tailUpbound(graph.store.coords(n, id)));
+      }
+    }
+    return bound;
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import mlcs.util.Stopwatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static mlcs.util.FileSearcher.getFileShortName;
+import static mlcs.util.FileSearcher.getOutFile;
+
+/**
+ * Solve a directory or a manifest of problem files in one JVM.
+ * Problems run concurrently on a bounded pool,the largest files first,each on a single thread.
+ * Every result is dumped beside the problem like BestMLCS does,and a summary csv records the timings.
+ */
+public class BatchMLCS {
+
+  public static void main(String[] args) throws Exception {
+    if (args.length == 0) {
+      System.out.println("Usage:BatchMLCS /path/to/directory|/path/to/manifest [threads=0] [minReserved=0]"
+        + " [layout=jagged|interleaved|vector|sparse] [dominance=false] [bound=distance|pairwise] [format=text|binary]"
+        + " [summary=/path/to/summary.csv] [tables=/path/to/table/cache]");
+      return;
+    }
+    Map<String, String> arguments = new HashMap<>();
+    for (int i = 1; i < args.length; i++) {
+      String arg = args[i];
+      int eqIndx = arg.indexOf('=');
+      arguments.put(arg.substring(0, eqIndx).trim(), arg.substring(eqIndx + 1).trim());
+    }
+    File input = new File(args[0]);
+    List<File> files = input.isDirectory() ? listDirectory(input) : readManifest(input);
+    String summary = arguments.getOrDefault("summary",
+      getOutFile(input.isDirectory() ? new File(input, "summary.csv") : input, "summary.csv"));
+
+    if (arguments.containsKey("tables")) {
+      SequenceCache.setShared(new SequenceCache(256L << 20, Path.of(arguments.get("tables"))));
+    }
+    var batch = new BatchMLCS();
+    batch.threads = Integer.parseInt(arguments.getOrDefault("threads", "0"));
+    batch.minReserved = Integer.parseInt(arguments.getOrDefault("minReserved", "0"));
+    batch.layout = SuccessorTables.Layout.of(arguments.getOrDefault("layout", "jagged"));
+    batch.dominance = Boolean.parseBoolean(arguments.getOrDefault("dominance", "false"));
+    batch.pairwise = arguments.getOrDefault("bound", "distance").equals("pairwise");
+    batch.binary = arguments.getOrDefault("format", "text").equals("binary");
+    long startAt = System.currentTimeMillis();
+    Row[] rows = batch.solve(files);
+    writeSummary(rows, new File(summary));
+    long failed = Arrays.stream(rows).filter(r -> null != r.error).count();
+    System.out.println("solved " + (rows.length - failed) + " of " + rows.length + " problems using "
+      + Stopwatch.format(System.currentTimeMillis() - startAt) + ",summary " + summary);
+  }
+
+  // worker count,0 for the available processors
+  public int threads;
+  // points reserved by the estimator,0 for the shortest sequence length
+  public int minReserved;
+  public SuccessorTables.Layout layout = SuccessorTables.Layout.Jagged;
+  public boolean dominance;
+  public boolean pairwise;
+  // dump results in the binary format
+  public boolean binary;
+
+  /**
+   * Solve all files,the rows are in the order of the files.
+   */
+  public Row[] solve(List<File> files) throws InterruptedException {
+    Integer[] order = new Integer[files.size()];
+    for (int i = 0; i < order.length; i++) order[i] = i;
+    Arrays.sort(order, Comparator.comparingLong((Integer i) -> files.get(i).length()).reversed());
+
+    int workers = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    ExecutorService executor = Executors.newFixedThreadPool(workers);
+    Row[] rows = new Row[files.size()];
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i : order) {
+      futures.add(executor.submit(() -> {
+        rows[i] = solve(files.get(i));
+        Row r = rows[i];
+        System.out.println(r.file.getName() + (null == r.error ? " length " + r.length : " failed " + r.error)
+          + " using " + Stopwatch.format(r.totalTime));
+      }));
+    }
+    executor.shutdown();
+    for (Future<?> f : futures) {
+      try {
+        f.get();
+      } catch (java.util.concurrent.ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * Solve one problem and dump its result
+   */
+  public Row solve(File file) {
+    Row row = new Row(file);
+    long startAt = System.currentTimeMillis();
+    try {
+      Mlcs mlcs = Mlcs.build(Mlcs.loadData(file), layout);
+      if (pairwise) mlcs.usePairwiseBound();
+      row.sequences = mlcs.seqs.size();
+      row.buildTime = System.currentTimeMillis() - startAt;
+
+      long searchAt = System.currentTimeMillis();
+      int reserved = minReserved > 0 ? minReserved : mlcs.maxLength;
+      var lb = LowerBoundEstimator.estimate(mlcs, reserved, null, false, LowerBoundEstimator.Scorer.Sum);
+      var search = new BestMLCS(mlcs, lb, dominance);
+      search.verbose = false;
+      Graph graph = search.search();
+      graph.cleanup();
+      Result result = graph.stat(graph.created(), graph.created(), startAt);
+      if (search.pruned > 0) {
+        // dominance pruning drops some paths,the count is unknown
+        result = new Result(graph, null, result.nodeCount, result.maxLevel, result.totalCreateCount,
+          result.highestCapacity, result.startAt, result.endAt);
+      }
+      row.searchTime = System.currentTimeMillis() - searchAt;
+
+      String extension = binary ? ResultFile.Extension : ".txt";
+      result.dumpTo(getOutFile(file, "ep_" + getFileShortName(file) + extension));
+      row.length = result.maxLevel;
+      if (null != result.mlcsCount) row.count = result.mlcsCount.toString();
+      row.nodes = result.nodeCount;
+      row.created = result.totalCreateCount;
+    } catch (Exception | OutOfMemoryError e) {
+      row.error = e.getClass().getSimpleName() + (null == e.getMessage() ? "" : ":" + e.getMessage());
+    }
+    row.totalTime = System.currentTimeMillis() - startAt;
+    return row;
+  }
+
+  /**
+   * Problem files of a directory,sorted by name
+   */
+  static List<File> listDirectory(File dir) {
+    File[] files = dir.listFiles(f -> f.isFile() && f.getName().endsWith(".txt"));
+    if (null == files) return new ArrayList<>();
+    Arrays.sort(files);
+    return new ArrayList<>(Arrays.asList(files));
+  }
+
+  /**
+   * Problem files listed one per line,relative to the manifest
+   */
+  static List<File> readManifest(File manifest) throws IOException {
+    List<File> files = new ArrayList<>();
+    for (String line : Files.readAllLines(manifest.toPath())) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) continue;
+      File f = new File(line);
+      files.add(f.isAbsolute() ? f : new File(manifest.getAbsoluteFile().getParentFile(), line));
+    }
+    return files;
+  }
+
+  static void writeSummary(Row[] rows, File summary) throws IOException {
+    summary.getAbsoluteFile().getParentFile().mkdirs();
+    try (PrintWriter out = new PrintWriter(summary, "UTF-8")) {
+      out.println("file,sequences,length,count,nodes,created,buildMillis,searchMillis,totalMillis,error");
+      for (Row r : rows) {
+        out.println(quote(r.file.getPath()) + "," + r.sequences + "," + r.length + "," + r.count + "," + r.nodes + ","
+          + r.created + "," + r.buildTime + "," + r.searchTime + "," + r.totalTime + ","
+          + (null == r.error ? "" : quote(r.error)));
+      }
+    }
+  }
+
+  /**
+   * Quote a free text cell,inner double quotes become single ones
+   */
+  static String quote(String text) {
+    return '"' + text.replace('"', '\'') + '"';
+  }
+
+  /**
+   * Outcome and timings of one problem
+   */
+  public static class Row {
+    public final File file;
+    public int sequences;
+    public int length;
+    public String count = "";
+    public long nodes, created;
+    public long buildTime, searchTime, totalTime;
+    public String error;
+
+    Row(File file) {
+      this.file = file;
+    }
+  }
+}
@@ -2,9 +2,16 @@ package mlcs;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import static mlcs.util.FileSearcher.getFileShortName;
 import static mlcs.util.FileSearcher.getOutFile;
@@ -13,7 +20,11 @@ public class BestMLCS {
 
   public static void main(String[] args) throws IOException {
     if (args.length == 0) {
-      System.out.println("Usage:BestMLCS /path/to/your/data/file [minReserved=5]");
+      System.out.println("Usage:BestMLCS /path/to/your/data/file [minReserved=5] [parallel=true] [threads=0]"
+        + " [layout=jagged|interleaved|vector|sparse] [dominance=false] [bound=distance|pairwise]"
+        + " [scorers=sum,maxCoord,tailUpbound] [time=seconds] [heap=MB]"
+        + " [external=/path/to/layers] [buffer=MB]"
+        + " [format=text|binary] [frontier=false] [bidirectional=false] [tables=/path/to/table/cache]");
       return;
     }
     Map<String, String> arguments = new HashMap<>();
@@ -28,70 +39,391 @@ public class BestMLCS {
     }
     long startAt = System.currentTimeMillis();
     var sourceFile = new File(args[0]);
-    Mlcs mlcs = Mlcs.build(Mlcs.loadData(sourceFile));
+    var layout = SuccessorTables.Layout.of(arguments.getOrDefault("layout", "jagged"));
+    if (arguments.containsKey("tables")) {
+      SequenceCache.setShared(new SequenceCache(256L << 20, Path.of(arguments.get("tables"))));
+    }
+    Mlcs mlcs = Mlcs.build(Mlcs.loadData(sourceFile), layout);
+    if (arguments.getOrDefault("bound", "distance").equals("pairwise")) mlcs.usePairwiseBound();
     int minReserved = Integer.parseInt(arguments.getOrDefault("minReserved", String.valueOf(mlcs.maxLength)));
-    var lb = LowerBoundEstimator.estimate(mlcs, minReserved);
-    var bestMlcs = new BestMLCS(mlcs, lb);
-    String resultFile = getOutFile(sourceFile, "ep_" + getFileShortName(sourceFile) + ".txt");
-    var graph = bestMlcs.search();
-    graph.cleanup();
-    statResult(graph, resultFile, startAt);
+    mlcs.maxThread = Integer.parseInt(arguments.getOrDefault("threads", "0"));
+    boolean parallel = Boolean.parseBoolean(arguments.getOrDefault("parallel", "false"));
+    boolean dominance = Boolean.parseBoolean(arguments.getOrDefault("dominance", "false"));
+    String[] scorerNames = arguments.getOrDefault("scorers", "sum").split(",");
+    var scorers = new LowerBoundEstimator.Scorer[scorerNames.length];
+    for (int i = 0; i < scorers.length; i++) scorers[i] = LowerBoundEstimator.Scorer.of(scorerNames[i].trim());
+    ForkJoinPool pool = parallel ? mlcs.newPool() : null;
+    String extension = arguments.getOrDefault("format", "text").equals("binary") ? ResultFile.Extension : ".txt";
+    String resultFile = getOutFile(sourceFile, "ep_" + getFileShortName(sourceFile) + extension);
+    if (arguments.containsKey("time") || arguments.containsKey("heap")) {
+      long time = (long) (Double.parseDouble(arguments.getOrDefault("time", "0")) * 1000);
+      long heap = Long.parseLong(arguments.getOrDefault("heap", "0")) << 20;
+      Result result = new AnytimeMLCS(mlcs, time, heap, pool).solve();
+      if (parallel) pool.shutdown();
+      report(result, resultFile);
+      return;
+    }
+    var lb = LowerBoundEstimator.estimate(mlcs, minReserved, pool, scorers);
+    if (Boolean.parseBoolean(arguments.getOrDefault("frontier", "false"))) {
+      if (parallel) pool.shutdown();
+      var frontier = new FrontierMLCS(mlcs, lb, dominance);
+      Result result = frontier.search();
+      if (dominance) System.out.println("pruned " + frontier.pruned + " dominated points");
+      report(result, resultFile);
+      return;
+    }
+    if (Boolean.parseBoolean(arguments.getOrDefault("bidirectional", "false"))) {
+      Graph graph = new BidirectionalMLCS(mlcs, lb).search();
+      statResult(graph, resultFile, startAt, true, pool);
+      if (parallel) pool.shutdown();
+      return;
+    }
+    if (arguments.containsKey("external")) {
+      if (parallel) pool.shutdown();
+      long buffer = Long.parseLong(arguments.getOrDefault("buffer", "256")) << 20;
+      var external = new ExternalMLCS(mlcs, lb, Path.of(arguments.get("external")), buffer);
+      report(external.search(), resultFile);
+      return;
+    }
+    var bestMlcs = new BestMLCS(mlcs, lb, dominance);
+    Graph graph;
+    graph = parallel ? bestMlcs.search(pool) : bestMlcs.search();
+    double pruneRate = bestMlcs.boundChecks == 0 ? 0d : 100d * bestMlcs.boundPruned / bestMlcs.boundChecks;
+    System.out.println("upbound pruned " + bestMlcs.boundPruned + " of " + bestMlcs.boundChecks
+      + " checked successors (" + String.format("%.2f", pruneRate) + "%)");
+    graph.cleanup(pool);
+    if (dominance) System.out.println("pruned " + bestMlcs.pruned + " dominated points");
+    statResult(graph, resultFile, startAt, bestMlcs.pruned == 0, pool);
+    if (parallel) pool.shutdown();
   }
 
-  private static void statResult(Graph graph, String resultFile, long startAt) {
-    Result result = graph.stat(graph.nodes.size(), graph.nodes.size(), startAt);
+  /**
+   * @param countable whether all paths are kept in the graph,so the path count is the mlcs count.
+   * @param pool      count the paths in the pool,null for sequential
+   */
+  private static void statResult(Graph graph, String resultFile, long startAt, boolean countable,
+                                 ForkJoinPool pool) {
+    Result result = graph.stat(graph.created(), graph.created(), startAt, pool);
+    if (!countable) {
+      result = new Result(graph, null, result.nodeCount, result.maxLevel, result.totalCreateCount,
+        result.highestCapacity, result.startAt, result.endAt);
+    }
+    report(result, resultFile);
+  }
+
+  private static void report(Result result, String resultFile) {
     System.out.println(result.buildResultString());
     result.dumpTo(resultFile);
-    System.out.println("find " + result.mlcsCount.toString() + " mlcs(length " + result.maxLevel + ")");
-    if (graph.maxLevel < 300) result.visualize();
+    String count = (null == result.mlcsCount) ? "????" : result.mlcsCount.toString();
+    System.out.println("find " + count + " mlcs(length " + result.maxLevel + ")");
+    if (result.upperBound > result.maxLevel) System.out.println("mlcs length is at most " + result.upperBound);
+    if (result.maxLevel < 300) result.visualize();
   }
 
 
   public Mlcs mlcs;
   private final int lowerBound;
+  // keep only the non-dominated points of each layer
+  private final boolean dominance;
+  // count of dominated points removed from the graph
+  public long pruned;
+  private DominanceFilter filter;
+  // new points checked against the lower bound,and those cut by their tail upbound
+  public long boundChecks, boundPruned;
+  // stop at this time in millis or above this used heap in bytes,0 for unlimited
+  long deadline, heapLimit;
+  // the layer whose heap check last forced a full collection
+  private int collectedAt = -1;
+  // the layer being expanded when the budget ran out,-1 if the search completed
+  public int abortedAt = -1;
+  // print the size of every layer
+  public boolean verbose = true;
 
   public BestMLCS(Mlcs mlcs, int lowerBound) {
+    this(mlcs, lowerBound, false);
+  }
+
+  /**
+   * In dominance mode,a point dominated by another point of its layer is dropped before expanding.
+   * Every common subsequence continuing from it also continues from its dominator,
+   * so the MLCS length is exact,but the MLCS count is only exact when nothing was pruned.
+   */
+  public BestMLCS(Mlcs mlcs, int lowerBound, boolean dominance) {
     this.mlcs = mlcs;
     this.lowerBound = lowerBound;
+    this.dominance = dominance;
   }
 
   public Graph search() {
     var k = 0;
     Graph graph = new Graph(this.mlcs);
-    while (!graph.layers[k].isEmpty()) {//Lk
-      //new set for avoid ConcurrentModification,due to shifting from k to k+1
-      var layerK = new HashSet<>(graph.layers[k].keySet());
-      System.out.println("layer " + k + " size " + layerK.size());
-      for (Node p : layerK) {
-        if (p.level != k) continue;
-        for (Node q : mlcs.nextLocations(p)) {
-          var existQ = graph.nodes.get(q);
-          if (existQ == null) {
-            q.updateLevel((short) (k + 1));
-            int possible = mlcs.tailUpbound(q.id);
-            if (possible + q.level >= lowerBound) {
-              q.addEdge(p);
-              graph.add(q);
+    int[] current = new int[mlcs.seqs.size()];
+    int[][] nexts = mlcs.newBuffer();
+    int[] layerK = graph.getLevel(k);
+    while (layerK.length > 0) {//Lk
+      if (exceeded(k)) {
+        abortedAt = k;
+        return graph;
+      }
+      if (dominance && k > 0) layerK = prune(graph, layerK);
+      if (verbose) System.out.println("layer " + k + " size " + layerK.length);
+      for (int i = 0; i < layerK.length; i++) {
+        int p = layerK[i];
+        if ((i & 4095) == 4095 && exceeded(k)) {
+          abortedAt = k;
+          return graph;
+        }
+        //skip the node shifted from k to k+1
+        if (graph.level(p) != k) continue;
+        int count = mlcs.nextLocations(graph.store.coords(p, current), nexts);
+        for (int j = 0; j < count; j++) {
+          int[] q = nexts[j];
+          int slot = graph.index.find(q);
+          if (slot < 0) {
+            int possible = mlcs.tailUpbound(q);
+            boundChecks += 1;
+            if (possible + k + 1 >= lowerBound) {
+              graph.store.addEdge(graph.add(q, k + 1), p);
+            } else {
+              boundPruned += 1;
             }
           } else {
-            if (existQ.level < (k + 1)) {
-              graph.shift(existQ, existQ.level, (short) (k + 1));
-              existQ.updateLevel((short) (k + 1));
-              existQ.setEdge(p);//only reserved this one
+            int existQ = graph.index.handle(slot);
+            if (graph.index.level(slot) < (k + 1)) {
+              graph.shiftAt(slot, k + 1);
+              graph.store.setEdge(existQ, p);//only reserved this one
             } else {
-              existQ.addEdge(p);
+              graph.store.addEdge(existQ, p);
             }
           }
         }
       }
       k = k + 1;
+      layerK = graph.getLevel(k);
+    }
+    return finish(graph, k);
+  }
+
+  /**
+   * Search the graph,expanding every layer in the given pool.
+   * Workers generate and dedupe the successors of their share of layer k,
+   * then the results are merged in the same order as the sequential search,
+   * so layer k+1, the shifted nodes and their edges are identical.
+   */
+  public Graph search(ForkJoinPool pool) {
+    var k = 0;
+    Graph graph = new Graph(this.mlcs);
+    int[] layerK = graph.getLevel(k);
+    while (layerK.length > 0) {//Lk
+      if (exceeded(k)) {
+        abortedAt = k;
+        return graph;
+      }
+      if (dominance && k > 0) layerK = prune(graph, layerK);
+      if (verbose) System.out.println("layer " + k + " size " + layerK.length);
+      Expansion[] chunks = new Expansion[(layerK.length + Expansion.ChunkSize - 1) / Expansion.ChunkSize];
+      for (int i = 0; i < chunks.length; i++) {
+        chunks[i] = new Expansion(graph, layerK, k, i * Expansion.ChunkSize);
+      }
+      pool.invoke(new Expanding(chunks, 0, chunks.length));
+      for (Expansion chunk : chunks) {
+        if (exceeded(k)) {
+          abortedAt = k;
+          return graph;
+        }
+        chunk.merge();
+      }
+      k = k + 1;
+      layerK = graph.getLevel(k);
+    }
+    return finish(graph, k);
+  }
+
+  /**
+   * Remove the dominated points of the layer from the graph
+   *
+   * @return the remaining points
+   */
+  private int[] prune(Graph graph, int[] layer) {
+    if (null == filter) filter = new DominanceFilter(mlcs.seqs.size());
+    int[] minima = filter.minima(graph.store, layer);
+    if (minima.length < layer.length) {
+      int j = 0;
+      for (int h : layer) {
+        if (j < minima.length && minima[j] == h) j += 1;
+        else graph.remove(h);
+      }
+      pruned += layer.length - minima.length;
+    }
+    return minima;
+  }
+
+  /**
+   * Whether the time or heap budget ran out while expanding layer k.
+   * Over the heap limit a full collection is forced at most once per layer,
+   * later checks of the layer compare the heap left by the last collections instead.
+   */
+  private boolean exceeded(int k) {
+    if (deadline > 0 && System.currentTimeMillis() > deadline) return true;
+    if (heapLimit > 0) {
+      Runtime rt = Runtime.getRuntime();
+      if (rt.totalMemory() - rt.freeMemory() > heapLimit) {
+        if (collectedAt != k) {
+          collectedAt = k;
+          System.gc();
+          return rt.totalMemory() - rt.freeMemory() > heapLimit;
+        }
+        return collectedHeap() > heapLimit;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Heap in use right after the last collection of every heap pool
+   */
+  private static long collectedHeap() {
+    long used = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() != MemoryType.HEAP) continue;
+      MemoryUsage usage = pool.getCollectionUsage();
+      if (null != usage) used += usage.getUsed();
     }
+    return used;
+  }
+
+  private Graph finish(Graph graph, int k) {
     graph.maxLevel = k - 1;
-    mlcs.end.level = (short) k;
-    for (Node n : graph.layers[graph.maxLevel].keySet()) {
-      mlcs.end.addEdge(n);
+    int end = graph.addEnd(k);
+    for (int n : graph.getLevel(graph.maxLevel)) {
+      graph.store.addEdge(end, n);
     }
-    graph.add((short) (k), mlcs.end);
     return graph;
   }
+
+  /**
+   * Expand the chunks[from,to) in parallel
+   */
+  private static class Expanding extends RecursiveAction {
+    final Expansion[] chunks;
+    final int from, to;
+
+    Expanding(Expansion[] chunks, int from, int to) {
+      this.chunks = chunks;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from == 1) {
+        chunks[from].expand();
+      } else {
+        int mid = (from + to) >>> 1;
+        invokeAll(new Expanding(chunks, from, mid), new Expanding(chunks, mid, to));
+      }
+    }
+  }
+
+  /**
+   * Successors of a chunk of layer k.
+   * Each successor is either the handle of an existing node, or a fresh node which passes the upbound check.
+   * Fresh nodes are deduplicated within the chunk and the graph is only read while expanding.
+   */
+  private class Expansion {
+    static final int ChunkSize = 256;
+    final Graph graph;
+    final int[] layer;
+    final int k, from, to;
+    // existing handle,or -(fresh handle+1) of fresh nodes
+    final int[][] successors;
+    // fresh nodes,level k+1 passed the upbound check and -1 not
+    final NodeStore fresh;
+    int[] freshHandles;
+    // successors of each point cut by the upbound,counted once per occurrence like the sequential search
+    final int[] rejected;
+
+    Expansion(Graph graph, int[] layer, int k, int from) {
+      this.graph = graph;
+      this.layer = layer;
+      this.k = k;
+      this.from = from;
+      this.to = Math.min(layer.length, from + ChunkSize);
+      this.successors = new int[to - from][];
+      this.rejected = new int[to - from];
+      this.fresh = new NodeStore(mlcs.seqs.size(), mlcs.width, 8);
+    }
+
+    void expand() {
+      var freshIndex = new NodeIndex(fresh, ChunkSize);
+      int[] current = new int[mlcs.seqs.size()];
+      int[][] nexts = mlcs.newBuffer();
+      int[] resolved = new int[nexts.length];
+      for (int i = from; i < to; i++) {
+        int count = mlcs.nextLocations(graph.store.coords(layer[i], current), nexts);
+        int resolvedCount = 0;
+        for (int j = 0; j < count; j++) {
+          int[] q = nexts[j];
+          int existQ = graph.find(q);
+          if (existQ >= 0) {
+            resolved[resolvedCount++] = existQ;
+          } else {
+            int slot = freshIndex.find(q);
+            int f;
+            if (slot < 0) {
+              int level = (mlcs.tailUpbound(q) + k + 1 >= lowerBound) ? k + 1 : -1;
+              f = fresh.add(q, level);
+              freshIndex.add(f, level);
+            } else {
+              f = freshIndex.handle(slot);
+            }
+            if (fresh.level(f) > 0) resolved[resolvedCount++] = -f - 1;
+            else rejected[i - from] += 1;
+          }
+        }
+        successors[i - from] = Arrays.copyOf(resolved, resolvedCount);
+      }
+      freshHandles = new int[fresh.size()];
+      Arrays.fill(freshHandles, -1);
+    }
+
+    /**
+     * Replay the sequential search over this chunk,including its upbound check counts
+     */
+    void merge() {
+      int[] id = new int[mlcs.seqs.size()];
+      for (int i = from; i < to; i++) {
+        int p = layer[i];
+        if (graph.level(p) != k) continue;
+        boundChecks += rejected[i - from];
+        boundPruned += rejected[i - from];
+        for (int q : successors[i - from]) {
+          int existQ = q;
+          if (q < 0) {
+            // a fresh node may have been added by another chunk
+            int f = -q - 1;
+            existQ = freshHandles[f];
+            if (existQ < 0) {
+              fresh.coords(f, id);
+              existQ = graph.find(id);
+              if (existQ < 0) {
+                boundChecks += 1;
+                existQ = graph.add(id, k + 1);
+                graph.store.addEdge(existQ, p);
+                freshHandles[f] = existQ;
+                continue;
+              }
+              freshHandles[f] = existQ;
+            }
+          }
+          if (graph.level(existQ) < (k + 1)) {
+            graph.shift(existQ, k + 1);
+            graph.store.setEdge(existQ, p);//only reserved this one
+          } else {
+            graph.store.addEdge(existQ, p);
+          }
+        }
+      }
+    }
+  }
 }
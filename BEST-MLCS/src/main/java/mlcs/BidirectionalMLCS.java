@@ -0,0 +1,353 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.util.Arrays;
+
+/**
+ * Grow layers forward from the start by successors and backward from the end by predecessors,
+ * always expanding the narrower frontier,until they meet in the middle.
+ * <p>
+ * The forward level of a point is the longest common subsequence ending at it,the backward level the longest
+ * starting at it,both exact once the layers below them are expanded.
+ * An mlcs of length L passes every forward layer a before L-a more characters,so every forward layer bounds L
+ * by its level plus the tail upbound of its points,and the backward layers by the head upbound.
+ * The forward and backward points are different embeddings(leftmost and rightmost),so layers are joined
+ * on pairs where the forward point precedes the backward point in every sequence.
+ * When no point of the forward frontier precedes a point of the backward frontier,the frontiers crossed and
+ * the length is below a+b.
+ * Once the forward depth a plus the backward depth b reaches the bound,a forward layer m and
+ * the backward layer L-m are joined,both exact,and the halves are assembled into the mlcs graph.
+ * A path of the graph is a leftmost prefix followed by a rightmost suffix,one path for each mlcs.
+ */
+public class BidirectionalMLCS {
+  private final Mlcs mlcs;
+  private final int lowerBound;
+  private final int dimension;
+  // char -> sequence -> count of the char before a location
+  private final int[][][] heads;
+  private DominanceFilter filter;
+
+  public Graph forward, backward;
+  // the upper bound proven by the frontiers
+  public int upperBound;
+  // print the frontier sizes of every step
+  public boolean verbose = true;
+
+  public BidirectionalMLCS(Mlcs mlcs, int lowerBound) {
+    this.mlcs = mlcs;
+    this.lowerBound = lowerBound;
+    this.dimension = mlcs.seqs.size();
+    heads = new int[mlcs.alphabet.size()][dimension][];
+    for (int i = 0; i < dimension; i++) {
+      int[] codes = mlcs.seqs.get(i).codes();
+      for (int c = 0; c < heads.length; c++) {
+        int[] counts = new int[codes.length];
+        for (int p = 1; p < codes.length; p++) {
+          counts[p] = counts[p - 1] + (codes[p - 1] == c ? 1 : 0);
+        }
+        heads[c][i] = counts;
+      }
+    }
+  }
+
+  public Graph search() {
+    forward = new Graph(mlcs);
+    backward = new Graph(mlcs, mlcs.end.id);
+    int a = 0, b = 0;
+    upperBound = Math.min(mlcs.tailUpbound(mlcs.start.id), headUpbound(mlcs.end.id));
+    while (a + b < upperBound || a == 0 || b == 0) {
+      boolean forth = b > 0 && (a == 0 || forward.layerSize(a) <= backward.layerSize(b));
+      if (forth) {
+        expand(forward, a, true);
+        a += 1;
+        upperBound = Math.min(upperBound, bound(forward, a, true));
+      } else {
+        expand(backward, b, false);
+        b += 1;
+        upperBound = Math.min(upperBound, bound(backward, b, false));
+      }
+      if (a > 0 && b > 0 && a + b <= upperBound && crossed(a, b)) upperBound = a + b - 1;
+      if (verbose) System.out.println("forward layer " + a + " size " + forward.layerSize(a) + ",backward layer " + b
+        + " size " + backward.layerSize(b) + ",upper bound " + upperBound);
+      if (upperBound <= 0) break;
+    }
+    if (verbose) System.out.println("created " + forward.created() + " forward and " + backward.created() + " backward points");
+    return join(a, b);
+  }
+
+  /**
+   * Expand layer k of the graph,forward by successors or backward by predecessors
+   */
+  private void expand(Graph graph, int k, boolean forth) {
+    int[] current = new int[dimension];
+    int[][] nexts = mlcs.newBuffer();
+    for (int p : graph.getLevel(k)) {
+      if (graph.level(p) != k) continue;
+      graph.store.coords(p, current);
+      int count = forth ? mlcs.nextLocations(current, nexts) : mlcs.prevLocations(current, nexts);
+      for (int j = 0; j < count; j++) {
+        int[] q = nexts[j];
+        int slot = graph.index.find(q);
+        if (slot < 0) {
+          int possible = forth ? mlcs.tailUpbound(q) : headUpbound(q);
+          if (possible + k + 1 >= lowerBound) graph.store.addEdge(graph.add(q, k + 1), p);
+        } else {
+          int existQ = graph.index.handle(slot);
+          if (graph.index.level(slot) < (k + 1)) {
+            graph.shiftAt(slot, k + 1);
+            graph.store.setEdge(existQ, p);
+          } else {
+            graph.store.addEdge(existQ, p);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Whether no point of forward layer a precedes a point of backward layer b in all sequences.
+   * An mlcs of length a+b or longer passes such a pair,so the length is at most a+b-1 once the frontiers crossed.
+   * Only the minima of the forward layer and the maxima of the backward layer are compared.
+   */
+  private boolean crossed(int a, int b) {
+    if (null == filter) filter = new DominanceFilter(dimension);
+    int[] xs = filter.minima(forward.store, forward.getLevel(a));
+    int[] layer = backward.getLevel(b);
+    NodeStore flipped = new NodeStore(dimension, mlcs.width, 10);
+    int[] id = new int[dimension];
+    int[] handles = new int[layer.length];
+    for (int i = 0; i < layer.length; i++) {
+      backward.store.coords(layer[i], id);
+      for (int j = 0; j < dimension; j++) id[j] = (mlcs.end.id[j] - id[j]);
+      handles[i] = flipped.add(id, 0);
+    }
+    int[] ys = filter.minima(flipped, handles);
+    int[] x = new int[dimension];
+    int[] y = new int[dimension];
+    for (int xh : xs) {
+      forward.store.coords(xh, x);
+      for (int yh : ys) {
+        backward.store.coords(layer[yh], y);
+        if (before(x, y)) return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean before(int[] x, int[] y) {
+    for (int i = 0; i < x.length; i++) {
+      if (x[i] >= y[i]) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Upper bound of the mlcs length given by layer k,k-1 if the layer is empty
+   */
+  private int bound(Graph graph, int k, boolean forth) {
+    int bound = k - 1;
+    int[] id = new int[dimension];
+    for (int n : graph.getLevel(k)) {
+      graph.store.coords(n, id);
+      bound = Math.max(bound, k + (forth ? mlcs.tailUpbound(id) : headUpbound(id)));
+    }
+    return bound;
+  }
+
+  /**
+   * Common subsequence length before a location,positions beyond the max length are not counted
+   * as the successors and predecessors leave them out
+   */
+  int headUpbound(int[] index) {
+    int bound = 0;
+    int limit = mlcs.maxLength + 1;
+    for (int[][] counts : heads) {
+      int min = Integer.MAX_VALUE;
+      for (int i = 0; i < dimension && min > 0; i++) min = Math.min(min, counts[i][Math.min(index[i], limit)]);
+      bound += min;
+    }
+    return bound;
+  }
+
+  /**
+   * Find the longest length joining a forward layer m with the backward layer length-m,
+   * then assemble the forward ancestors and backward descendants of the joined points.
+   */
+  private Graph join(int a, int b) {
+    int length = 0, meet = 0;
+    for (int l = upperBound; l >= Math.max(1, lowerBound) && length == 0; l--) {
+      int m = meetLayer(l, a, b);
+      if (connect(m, l, null)) {
+        length = l;
+        meet = m;
+      }
+    }
+    Graph graph = new Graph(mlcs);
+    graph.maxLevel = length;
+    int end = graph.addEnd(length + 1);
+    if (length == 0) {
+      // the empty mlcs,one path from the start to the end as in BestMLCS
+      graph.store.addEdge(end, graph.start);
+      return graph;
+    }
+
+    int[] forwards = new int[forward.store.size()];
+    int[] backwards = new int[backward.store.size()];
+    Arrays.fill(forwards, -1);
+    Arrays.fill(backwards, -1);
+    forwards[forward.start] = graph.start;
+    backwards[backward.start] = end;
+    connect(meet, length, new Joint(graph, forwards, backwards));
+
+    // forward ancestors,layer by layer down to the start
+    int[] id = new int[dimension];
+    int[] layer = collect(forward, meet, forwards);
+    for (int l = meet; l >= 1 && layer.length > 0; l--) {
+      int[] lower = new int[16];
+      int size = 0;
+      for (int n : layer) {
+        for (int i = 0, degree = forward.store.degree(n); i < degree; i++) {
+          int p = forward.store.prec(n, i);
+          if (forward.level(p) != l - 1) continue;
+          if (forwards[p] < 0) {
+            forwards[p] = graph.add(forward.store.coords(p, id), l - 1);
+            lower = append(lower, size++, p);
+          }
+          graph.store.addEdge(forwards[n], forwards[p]);
+        }
+      }
+      layer = Arrays.copyOf(lower, size);
+    }
+    // backward descendants,their backward precursors are the forward successors
+    layer = collect(backward, length - meet, backwards);
+    for (int g = length - meet; g >= 1 && layer.length > 0; g--) {
+      int[] upper = new int[16];
+      int size = 0;
+      for (int n : layer) {
+        for (int i = 0, degree = backward.store.degree(n); i < degree; i++) {
+          int s = backward.store.prec(n, i);
+          if (backward.level(s) != g - 1) continue;
+          if (backwards[s] < 0) {
+            backwards[s] = graph.add(backward.store.coords(s, id), length - g + 2);
+            upper = append(upper, size++, s);
+          }
+          graph.store.addEdge(backwards[s], backwards[n]);
+        }
+      }
+      layer = Arrays.copyOf(upper, size);
+    }
+    return graph;
+  }
+
+  /**
+   * The forward layer to join for the given length,the one with the smallest product of both layer sizes.
+   * Levels up to a and b are exact,so m lies in [max(1,length-b),min(a,length)].
+   */
+  private int meetLayer(int length, int a, int b) {
+    int best = Math.max(1, length - b);
+    long cost = Long.MAX_VALUE;
+    for (int m = best; m <= Math.min(a, length); m++) {
+      long c = (long) forward.layerSize(m) * Math.max(1, backward.layerSize(length - m));
+      if (c < cost) {
+        cost = c;
+        best = m;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Whether a point of forward layer m precedes a point of backward layer length-m in all sequences,
+   * every such pair continues the prefix ending at the first point with the suffix starting at the second.
+   *
+   * @param joint link all such pairs into the joint graph,null for the existence only
+   */
+  private boolean connect(int m, int length, Joint joint) {
+    int j = length - m;
+    int[] xs = filter(forward, m, j, true);
+    int[] ys = (j == 0) ? new int[]{backward.start} : filter(backward, j, m, false);
+    int[] x = new int[dimension];
+    int[] y = new int[dimension];
+    boolean connected = false;
+    for (int xh : xs) {
+      forward.store.coords(xh, x);
+      for (int yh : ys) {
+        backward.store.coords(yh, y);
+        if (!before(x, y)) continue;
+        if (null == joint) return true;
+        connected = true;
+        joint.link(xh, yh, x, y, m);
+      }
+    }
+    return connected;
+  }
+
+  /**
+   * Points of layer k whose tail(forward) or head(backward) upbound reaches the other part
+   */
+  private int[] filter(Graph graph, int k, int rest, boolean forth) {
+    int[] layer = graph.getLevel(k);
+    int[] id = new int[dimension];
+    int size = 0;
+    for (int n : layer) {
+      graph.store.coords(n, id);
+      if ((forth ? mlcs.tailUpbound(id) : headUpbound(id)) >= rest) layer[size++] = n;
+    }
+    return Arrays.copyOf(layer, size);
+  }
+
+  /**
+   * Handles of layer k already copied into the joint graph
+   */
+  private static int[] collect(Graph graph, int k, int[] copies) {
+    int[] layer = (k == 0) ? new int[0] : graph.getLevel(k);
+    int size = 0;
+    for (int n : layer) {
+      if (copies[n] >= 0) layer[size++] = n;
+    }
+    return Arrays.copyOf(layer, size);
+  }
+
+  /**
+   * The joint graph,with the copies of forward and backward points
+   */
+  private static class Joint {
+    final Graph graph;
+    final int[] forwards, backwards;
+
+    Joint(Graph graph, int[] forwards, int[] backwards) {
+      this.graph = graph;
+      this.forwards = forwards;
+      this.backwards = backwards;
+    }
+
+    void link(int xh, int yh, int[] x, int[] y, int m) {
+      if (forwards[xh] < 0) forwards[xh] = graph.add(x, m);
+      if (backwards[yh] < 0) backwards[yh] = graph.add(y, m + 1);
+      graph.store.addEdge(backwards[yh], forwards[xh]);
+    }
+  }
+
+  private static int[] append(int[] array, int size, int value) {
+    if (size == array.length) array = Arrays.copyOf(array, size * 2);
+    array[size] = value;
+    return array;
+  }
+}
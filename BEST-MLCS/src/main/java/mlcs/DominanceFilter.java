@@ -0,0 +1,276 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.util.Arrays;
+
+/**
+ * Find the minima(non-dominated points) of a layer.
+ * A point p dominates q if p != q and p[i] <= q[i] for every sequence i.
+ * Points are radix sorted in lexicographic order first,so a dominator always precedes the points it dominates.
+ * Two and three sequences are swept directly,more sequences are divided and conquered.
+ */
+public class DominanceFilter {
+  private static final int BruteForce = 32;
+  private static final int Samples = 63;
+
+  private final int dimension;
+  private int[] coords; // point -> flat coordinates
+
+  public DominanceFilter(int dimension) {
+    this.dimension = dimension;
+  }
+
+  /**
+   * The handles not dominated by another handle of the layer,in the layer order.
+   *
+   * @param store
+   * @param handles distinct points
+   * @return
+   */
+  public int[] minima(NodeStore store, int[] handles) {
+    int n = handles.length;
+    if (n < 2) return handles;
+    int d = dimension;
+    coords = new int[n * d];
+    int maxCoord = 0;
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < d; j++) {
+        int c = store.coord(handles[i], j);
+        coords[i * d + j] = c;
+        if (c > maxCoord) maxCoord = c;
+      }
+    }
+    int[] ids = sort(coords, n, d, maxCoord);
+    int count = minima(ids, maxCoord);
+    coords = null;
+
+    boolean[] kept = new boolean[n];
+    for (int i = 0; i < count; i++) kept[ids[i]] = true;
+    int[] rs = new int[count];
+    int k = 0;
+    for (int i = 0; i < n; i++) {
+      if (kept[i]) rs[k++] = handles[i];
+    }
+    return rs;
+  }
+
+  /**
+   * The minima of n points in flat coordinates,as point indexes in lexicographic order.
+   * Duplicated points are kept only once,the first copy dominates the others.
+   */
+  public int[] sortedMinima(int[] points, int n, int maxCoord) {
+    coords = points;
+    int[] sorted = sort(points, n, dimension, maxCoord);
+    int[] ids = sorted.clone();
+    int count = minima(ids, maxCoord);
+    coords = null;
+
+    boolean[] kept = new boolean[n];
+    for (int i = 0; i < count; i++) kept[ids[i]] = true;
+    int[] rs = new int[count];
+    int k = 0;
+    for (int id : sorted) {
+      if (kept[id]) rs[k++] = id;
+    }
+    return rs;
+  }
+
+  /**
+   * Move the minima of the sorted points to the front
+   *
+   * @return the count of minima
+   */
+  private int minima(int[] ids, int maxCoord) {
+    int d = dimension;
+    if (ids.length == 0) return 0;
+    else if (d == 1) return 1;
+    else if (d == 2) return sweep2(ids);
+    else if (d == 3) return sweep3(ids, maxCoord);
+    else return minima(ids, 0, ids.length);
+  }
+
+  /**
+   * Stable LSD radix sort of the points in lexicographic order
+   *
+   * @param coords    flat coordinates of n points
+   * @param maxCoord  the largest coordinate
+   * @return the points in lexicographic order
+   */
+  static int[] sort(int[] coords, int n, int dimension, int maxCoord) {
+    int[] ids = new int[n];
+    int[] tmp = new int[n];
+    int[] counts = new int[maxCoord + 2];
+    for (int i = 0; i < n; i++) ids[i] = i;
+    for (int j = dimension - 1; j >= 0; j--) {
+      Arrays.fill(counts, 0);
+      for (int i = 0; i < n; i++) counts[coords[ids[i] * dimension + j] + 1] += 1;
+      for (int c = 1; c < counts.length; c++) counts[c] += counts[c - 1];
+      for (int i = 0; i < n; i++) tmp[counts[coords[ids[i] * dimension + j]]++] = ids[i];
+      int[] t = ids;
+      ids = tmp;
+      tmp = t;
+    }
+    return ids;
+  }
+
+  /**
+   * Points before q have a smaller or equal x,q is dominated if one of them has a smaller or equal y.
+   */
+  private int sweep2(int[] ids) {
+    int count = 0;
+    int minY = Integer.MAX_VALUE;
+    for (int id : ids) {
+      int y = coords[id * 2 + 1];
+      if (y < minY) {
+        ids[count++] = id;
+        minY = y;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Like sweep2,the minimum z of kept points with y no larger than q's is maintained in a fenwick tree over y.
+   */
+  private int sweep3(int[] ids, int maxCoord) {
+    int[] tree = new int[maxCoord + 2];
+    Arrays.fill(tree, Integer.MAX_VALUE);
+    int count = 0;
+    for (int id : ids) {
+      int y = coords[id * 3 + 1];
+      int z = coords[id * 3 + 2];
+      int minZ = Integer.MAX_VALUE;
+      for (int i = y + 1; i > 0; i -= i & -i) {
+        if (tree[i] < minZ) minZ = tree[i];
+      }
+      if (minZ > z) {
+        ids[count++] = id;
+        for (int i = y + 1; i < tree.length; i += i & -i) {
+          if (z < tree[i]) tree[i] = z;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Move the minima of ids[lo,hi) to the front of the range
+   *
+   * @return the count of minima
+   */
+  private int minima(int[] ids, int lo, int hi) {
+    if (hi - lo <= BruteForce) {
+      int count = lo;
+      for (int i = lo; i < hi; i++) {
+        boolean dominated = false;
+        for (int j = lo; j < count && !dominated; j++) {
+          dominated = dominates(ids[j], ids[i], 0);
+        }
+        if (!dominated) ids[count++] = ids[i];
+      }
+      return count - lo;
+    }
+    int mid = (lo + hi) >>> 1;
+    int left = minima(ids, lo, mid);
+    int right = minima(ids, mid, hi);
+    // the right half follows the left in lexicographic order,only the left may dominate and x is already satisfied.
+    int[] a = Arrays.copyOfRange(ids, lo, lo + left);
+    int[] b = Arrays.copyOfRange(ids, mid, mid + right);
+    int kept = filter(a, a.length, b, b.length, 1);
+    System.arraycopy(b, 0, ids, lo + left, kept);
+    return left + kept;
+  }
+
+  /**
+   * Remove the points of b dominated by a point of a on the coordinates from dim,
+   * the survivors are moved to the front of b.
+   *
+   * @return the count of survivors
+   */
+  private int filter(int[] a, int na, int[] b, int nb, int dim) {
+    if (na == 0 || nb == 0) return nb;
+    int d = dimension;
+    if (dim == d - 1) {
+      int min = Integer.MAX_VALUE;
+      for (int i = 0; i < na; i++) min = Math.min(min, coords[a[i] * d + dim]);
+      int count = 0;
+      for (int i = 0; i < nb; i++) {
+        if (coords[b[i] * d + dim] < min) b[count++] = b[i];
+      }
+      return count;
+    }
+    if (na <= BruteForce || nb <= BruteForce) {
+      int count = 0;
+      for (int i = 0; i < nb; i++) {
+        boolean dominated = false;
+        for (int j = 0; j < na && !dominated; j++) {
+          dominated = dominates(a[j], b[i], dim);
+        }
+        if (!dominated) b[count++] = b[i];
+      }
+      return count;
+    }
+    // split a and b at a sampled median of dim,so that both sides are not empty
+    int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+    for (int i = 0; i < na; i++) {
+      int c = coords[a[i] * d + dim];
+      if (c < min) min = c;
+      if (c > max) max = c;
+    }
+    for (int i = 0; i < nb; i++) {
+      int c = coords[b[i] * d + dim];
+      if (c < min) min = c;
+      if (c > max) max = c;
+    }
+    if (min == max) return filter(a, na, b, nb, dim + 1);
+    int[] samples = new int[Samples];
+    for (int i = 0; i < Samples; i++) {
+      int k = (int) ((long) i * (na + nb) / Samples);
+      samples[i] = coords[(k < na ? a[k] : b[k - na]) * d + dim];
+    }
+    Arrays.sort(samples);
+    int m = Math.min(samples[Samples / 2], max - 1);
+    int[] a1 = new int[na], a2 = new int[na], b1 = new int[nb], b2 = new int[nb];
+    int na1 = 0, na2 = 0, nb1 = 0, nb2 = 0;
+    for (int i = 0; i < na; i++) {
+      if (coords[a[i] * d + dim] <= m) a1[na1++] = a[i];
+      else a2[na2++] = a[i];
+    }
+    for (int i = 0; i < nb; i++) {
+      if (coords[b[i] * d + dim] <= m) b1[nb1++] = b[i];
+      else b2[nb2++] = b[i];
+    }
+    // a2 can not dominate b1,and a1 is smaller than b2 at dim
+    int kept1 = filter(a1, na1, b1, nb1, dim);
+    int kept2 = filter(a2, na2, b2, nb2, dim);
+    kept2 = filter(a1, na1, b2, kept2, dim + 1);
+    System.arraycopy(b1, 0, b, 0, kept1);
+    System.arraycopy(b2, 0, b, kept1, kept2);
+    return kept1 + kept2;
+  }
+
+  private boolean dominates(int p, int q, int from) {
+    int pi = p * dimension, qi = q * dimension;
+    for (int j = from; j < dimension; j++) {
+      if (coords[pi + j] > coords[qi + j]) return false;
+    }
+    return true;
+  }
+}
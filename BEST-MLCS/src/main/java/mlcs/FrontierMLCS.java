@@ -0,0 +1,207 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import mlcs.util.Stopwatch;
+
+import java.util.Arrays;
+
+/**
+ * Find the mlcs length and one mlcs keeping only the current and next layer.
+ * <p>
+ * The first pass expands layer by layer until no successor passes the bound,which gives the length
+ * and a point of the last layer.
+ * The mlcs is recovered by midpoint splitting:a search from s to t carries for every point
+ * its ancestor in the middle layer,so the middle point of a s-t path is found,
+ * then both halves are solved the same way.Only three layers are held at any time.
+ * With dominance pruning the halves may end before their target points,
+ * the joined string is still a common subsequence of the same length.
+ */
+public class FrontierMLCS {
+  private final Mlcs mlcs;
+  private final int lowerBound;
+  // drop the dominated points of each layer
+  private final boolean dominance;
+  private final int dimension;
+
+  private NodeStore layer, next;
+  private NodeIndex layerIndex, nextIndex;
+  // point -> its ancestor in the middle store
+  private int[] layerRelays = new int[1024], nextRelays = new int[1024];
+  private final NodeStore middle;
+  private DominanceFilter filter;
+
+  // the most points in a layer
+  public int widest;
+  // count of dominated points dropped
+  public long pruned;
+
+  public FrontierMLCS(Mlcs mlcs, int lowerBound, boolean dominance) {
+    this.mlcs = mlcs;
+    this.lowerBound = lowerBound;
+    this.dominance = dominance;
+    this.dimension = mlcs.seqs.size();
+    this.layer = new NodeStore(dimension, mlcs.width);
+    this.next = new NodeStore(dimension, mlcs.width);
+    this.layerIndex = new NodeIndex(layer);
+    this.nextIndex = new NodeIndex(next);
+    this.middle = new NodeStore(dimension, mlcs.width);
+  }
+
+  public Result search() {
+    long startAt = System.currentTimeMillis();
+    layer.clear();
+    layer.add(mlcs.start.id, 0);
+    int k = 0;
+    while (true) {
+      expand(k, null, lowerBound);
+      if (next.size() == 0) break;
+      if (dominance) prune();
+      swap();
+      k += 1;
+      widest = Math.max(widest, layer.size());
+      System.out.println("layer " + k + " size " + layer.size());
+    }
+    int[] last = layer.coords(0, new int[dimension]);
+    StringBuilder sb = new StringBuilder(k);
+    if (k > 0) trace(mlcs.start.id, 0, last, k, k, sb);
+    System.out.println("frontier search using " + Stopwatch.format(System.currentTimeMillis() - startAt)
+      + ",widest layer " + widest);
+    return Result.of(mlcs, sb.toString(), k, startAt);
+  }
+
+  /**
+   * Append the characters of a path from s at level a to t at level b
+   *
+   * @param length the mlcs length,every point of the path may reach it
+   */
+  private void trace(int[] s, int a, int[] t, int b, int length, StringBuilder sb) {
+    if (b - a == 1) {
+      sb.append(mlcs.seqs.get(0).charAt(t[0]));
+      return;
+    }
+    int mid = (a + b) >>> 1;
+    layer.clear();
+    layerIndex.clear();
+    layerRelays[layer.add(s, 0)] = -1;
+    for (int depth = a; depth < b; depth++) {
+      expand(depth, t, length);
+      if (depth + 1 == mid) {
+        // the points of the middle layer are their own ancestors
+        middle.clear();
+        int[] buffer = new int[dimension];
+        for (int h = 0; h < next.size(); h++) nextRelays[h] = middle.add(next.coords(h, buffer), 0);
+      }
+      if (dominance) prune();
+      swap();
+    }
+    int end = reached(t);
+    if (end < 0) throw new IllegalStateException("Cannot reach the point at level " + b);
+    int[] m = middle.coords(layerRelays[end], new int[dimension]);
+    trace(s, a, m, mid, length, sb);
+    trace(m, mid, t, b, length, sb);
+  }
+
+  /**
+   * The point of the last layer standing for t.
+   * With dominance pruning t itself may be dropped,but a point before t with the same character remains,
+   * and every common subsequence after t also follows that point.
+   */
+  private int reached(int[] t) {
+    if (!dominance) {
+      int slot = layerIndex.find(t);
+      return slot < 0 ? -1 : layerIndex.handle(slot);
+    }
+    Sequence first = mlcs.seqs.get(0);
+    char c = first.charAt(t[0]);
+    for (int h = 0; h < layer.size(); h++) {
+      if (first.charAt(layer.coord(h, 0)) == c) return h;
+    }
+    return -1;
+  }
+
+  /**
+   * Successors of the layer at level k into the next layer,each inherits the relay of its first parent.
+   *
+   * @param target keep only the points not after the target,null for all
+   * @param bound  keep only the points whose level plus tail upbound reaches it
+   */
+  private void expand(int k, int[] target, int bound) {
+    next.clear();
+    nextIndex.clear();
+    int[] current = new int[dimension];
+    int[][] nexts = mlcs.newBuffer();
+    for (int h = 0, size = layer.size(); h < size; h++) {
+      int count = mlcs.nextLocations(layer.coords(h, current), nexts);
+      for (int i = 0; i < count; i++) {
+        int[] q = nexts[i];
+        if (null != target && !notAfter(q, target)) continue;
+        if (k + 1 + mlcs.tailUpbound(q) < bound) continue;
+        if (nextIndex.find(q) < 0) {
+          int n = next.add(q, k + 1);
+          nextIndex.add(n, k + 1);
+          if (n == nextRelays.length) nextRelays = Arrays.copyOf(nextRelays, n * 2);
+          nextRelays[n] = layerRelays[h];
+        }
+      }
+    }
+  }
+
+  private static boolean notAfter(int[] q, int[] t) {
+    for (int i = 0; i < q.length; i++) {
+      if (q[i] > t[i]) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Keep the minima of the next layer
+   */
+  private void prune() {
+    if (null == filter) filter = new DominanceFilter(dimension);
+    int[] handles = new int[next.size()];
+    for (int h = 0; h < handles.length; h++) handles[h] = h;
+    int[] minima = filter.minima(next, handles);
+    if (minima.length == handles.length) return;
+    pruned += handles.length - minima.length;
+    // rebuild the layer in the other store,which is cleared by the next expansion anyway
+    layer.clear();
+    layerIndex.clear();
+    if (layerRelays.length < minima.length) layerRelays = new int[nextRelays.length];
+    int[] buffer = new int[dimension];
+    for (int h : minima) {
+      int n = layer.add(next.coords(h, buffer), next.level(h));
+      layerIndex.add(n, next.level(h));
+      layerRelays[n] = nextRelays[h];
+    }
+    swap();
+  }
+
+  private void swap() {
+    NodeStore s = layer;
+    layer = next;
+    next = s;
+    NodeIndex i = layerIndex;
+    layerIndex = nextIndex;
+    nextIndex = i;
+    int[] r = layerRelays;
+    layerRelays = nextRelays;
+    nextRelays = r;
+  }
+}
@@ -20,27 +20,44 @@ package mlcs;
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * The MLCS problem solution graph.
- * It's a layered storage structure. The nodes[i] represents the set of key points at layer i.
+ * It's a layered storage structure. The layers[i] represents the set of key points at layer i.
+ * Key points are int handles of the node store,the level tag of a handle tells which layer it belongs to.
  */
-public class Graph {
-  public final HashMap<Node, Node>[] layers;
-  public final HashMap<Node, Node> nodes;
+public class Graph implements LayeredGraph {
+  public final NodeStore store;
+  public final NodeIndex index;
   public final Mlcs mlcs;
   public int maxLevel = 0;
-  public Node end;
+  public int start;
+  public int end = -1;
+
+  // handles appended to each layer,handles shifted or removed afterwards are skipped by level.
+  private int[][] layers;
+  private int[] layerSizes;
+  private int[] layerStales;
 
   public Graph(Mlcs mlcs) {
+    this(mlcs, mlcs.start.id);
+  }
+
+  /**
+   * A graph growing from the given origin,the end for a backward search
+   */
+  Graph(Mlcs mlcs, int[] origin) {
     this.mlcs = mlcs;
     this.maxLevel = mlcs.maxLength;
-    layers = new HashMap[maxLevel + 2];//0..maxLevel+1
-    for (int i = 0; i < maxLevel + 2; i++) {
-      layers[i] = new HashMap<>();
-    }
-    layers[0].put(mlcs.start, mlcs.start);
-    nodes = new HashMap<>();
+    this.store = new NodeStore(mlcs.seqs.size(), mlcs.width);
+    layers = new int[maxLevel + 2][];//0..maxLevel+1
+    layerSizes = new int[maxLevel + 2];
+    layerStales = new int[maxLevel + 2];
+    index = new NodeIndex(store);
+    start = store.add(origin, 0);
+    append(0, start);
   }
 
   /**
@@ -50,146 +67,212 @@ public class Graph {
    */
   public int height() {
     int max = 0;
-    for (HashMap<Node, Node> ns : layers) {
-      if (ns != null && ns.size() > max) {
-        max = ns.size();
-      }
+    for (int i = 0; i < layers.length; i++) {
+      int size = layerSize(i);
+      if (size > max) max = size;
     }
     return max;
   }
 
   public int size() {
     int count = 0;
-    for (HashMap<Node, Node> ns : layers) {
-      if (ns != null) {
-        count += ns.size();
-      }
+    for (int i = 0; i < layers.length; i++) {
+      count += layerSize(i);
     }
     return count;
   }
 
   /**
-   * Fetch the node corresponding the given id and level.
-   *
-   * @param id
-   * @param level
-   * @return
+   * How many key points were registered during the search
    */
-  private Node get(Node id, short level) {
-    return layers[level].get(id);
+  public int created() {
+    return index.size();
+  }
+
+  @Override
+  public int maxLevel() {
+    return maxLevel;
+  }
+
+  @Override
+  public int end() {
+    return end;
+  }
+
+  @Override
+  public int nodeLimit() {
+    return store.size();
+  }
+
+  @Override
+  public int level(int h) {
+    return store.level(h);
+  }
+
+  @Override
+  public int degree(int h) {
+    return store.degree(h);
+  }
+
+  @Override
+  public int prec(int h, int i) {
+    return store.prec(h, i);
   }
 
   /**
-   * Register a layer
+   * Find the node locating at given coordinates
    *
-   * @param level
-   * @param ns
+   * @param id
+   * @return handle or -1
    */
-  public void addLevel(short level, HashMap<Node, Node> ns) {
-    layers[level] = ns;
+  public int find(int[] id) {
+    int slot = index.find(id);
+    return slot < 0 ? -1 : index.handle(slot);
   }
 
   /**
    * Register a single node
    *
+   * @param id
    * @param level
-   * @param n
+   * @return the handle of the new node
    */
-  public void add(short level, Node n) {
-    HashMap<Node, Node> ns = layers[level];
-    if (null == ns) {
-      ns = new HashMap<>();
-      layers[level] = ns;
-    }
-    ns.put(n, n);
+  public int add(int[] id, int level) {
+    int h = store.add(id, level);
+    index.add(h, level);
+    append(level, h);
+    return h;
   }
 
+  /**
+   * Register the end node at the given level
+   */
+  public int addEnd(int level) {
+    end = store.add(mlcs.end.id, level);
+    append(level, end);
+    return end;
+  }
+
+  public void shift(int h, int toLevel) {
+    shiftAt(index.slotOf(h), toLevel);
+  }
 
-  public void add(Node loc) {
-    nodes.put(loc, loc);
-    layers[loc.level].put(loc, loc);
+  /**
+   * Shift the node of the given index slot to another layer
+   *
+   * @param slot
+   * @param toLevel
+   */
+  public void shiftAt(int slot, int toLevel) {
+    int h = index.handle(slot);
+    int from = index.level(slot);
+    index.updateLevel(slot, toLevel);
+    store.updateLevel(h, toLevel);
+    append(toLevel, h);
+    layerStales[from] += 1;
+    if (layerStales[from] * 2 > layerSizes[from]) compact(from);
   }
 
-  public void shift(Node loc, short fromLevel, short toLevel) {
-    //System.out.println("shift " + loc.toString() + " from " + fromLevel + " to " + toLevel);
-    layers[fromLevel].remove(loc);
-    //backwardRemovePath(loc, fromLevel);
-    layers[toLevel].put(loc, loc);
+  /**
+   * Remove the node from the graph,it can be registered again as a new node.
+   */
+  public void remove(int h) {
+    int slot = index.slotOf(h);
+    int from = index.level(slot);
+    index.remove(slot);
+    store.updateLevel(h, -1);
+    store.clearEdges(h);
+    layerStales[from] += 1;
+    if (layerStales[from] * 2 > layerSizes[from]) compact(from);
   }
 
-  public void cleanup() {
-    for (int i = maxLevel - 1; i > 0; i--) {
-      var layer = layers[i];
-      var removed = new HashSet<Node>();
-      for (Node n : layer.keySet()) {
-        if (!cleanupNode(n)) {
-          removed.add(n);
-        }
-      }
-      for (Node n : removed) {
-        layer.remove(n);
-      }
+  private void append(int level, int h) {
+    int[] layer = layers[level];
+    int size = layerSizes[level];
+    if (null == layer) {
+      layer = new int[16];
+      layers[level] = layer;
+    } else if (size == layer.length) {
+      layer = Arrays.copyOf(layer, size * 2);
+      layers[level] = layer;
     }
+    layer[size] = h;
+    layerSizes[level] = size + 1;
   }
 
-  private boolean cleanupNode(Node loc) {
-    boolean exists = false;
-    for (Node succor : mlcs.nextLocations(loc)) {
-      if (null != layers[loc.level + 1].get(succor)) {
-        exists = true;
-        break;
+  /**
+   * Remove the nodes which are not on a path to the end
+   */
+  public void cleanup() {
+    cleanup(null);
+  }
+
+  /**
+   * Mark the nodes reachable from the end by walking the predecessor edges once,
+   * then remove the unmarked nodes and compact the layers.
+   *
+   * @param pool mark each layer in the pool,null for sequential
+   */
+  public void cleanup(ForkJoinPool pool) {
+    if (end < 0) return;
+    byte[] marks = new byte[store.size()];
+    marks[end] = 1;
+    markPrecs(new int[]{end}, 0, 1, marks);
+    for (int l = maxLevel; l > 0; l--) {
+      int[] layer = getLevel(l);
+      if (null == pool || layer.length <= Marking.ChunkSize) {
+        markPrecs(layer, 0, layer.length, marks);
+      } else {
+        pool.invoke(new Marking(layer, 0, layer.length, marks));
       }
     }
-    if (!exists) {
-      for (Node succor : mlcs.nextLocations(loc)) {
-        var su = nodes.get(succor);
-        if (null != su && null != su.precs) {
-          if (su.precs.contains(loc)) {
-            su.precs.remove(loc);
-            break;
-          }
+    for (int l = maxLevel; l > 0; l--) {
+      int removed = 0;
+      for (int n : getLevel(l)) {
+        if (marks[n] == 0) {
+          index.updateLevel(index.slotOf(n), -1);
+          store.updateLevel(n, -1);
+          store.clearEdges(n);
+          removed += 1;
         }
       }
+      if (removed > 0) compact(l);
     }
-    return exists;
-  }
-
-  private void backwardRemovePath(Node from, short fromLevel) {
-    layers[from.level].remove(from);
-    nodes.remove(from);
-    //System.out.println("remove "+ from.toString());
-    if (null != from.precs) {
-      var removedPreces = new HashSet<Node>();
-      for (Node prec : from.precs) {
-        if (!existSuccessors(prec)) {
-          removedPreces.add(prec);
-          backwardRemovePath(prec, prec.level);
-        }
-      }
-      from.precs.removeAll(removedPreces);
+  }
+
+  /**
+   * Mark the predecessors of the marked nodes in layer[from,to)
+   */
+  private void markPrecs(int[] layer, int from, int to, byte[] marks) {
+    for (int i = from; i < to; i++) {
+      int n = layer[i];
+      if (marks[n] == 0) continue;
+      for (int j = 0, degree = store.degree(n); j < degree; j++) marks[store.prec(n, j)] = 1;
     }
   }
 
-  private boolean existSuccessors(Node loc) {
-    boolean exists = false;
-    for (Node succor : mlcs.nextLocations(loc)) {
-      if (null != layers[loc.level + 1].get(succor)) {
-        exists = true;
-        break;
-      }
+  private class Marking extends RecursiveAction {
+    static final int ChunkSize = 1024;
+    final int[] layer;
+    final int from, to;
+    final byte[] marks;
+
+    Marking(int[] layer, int from, int to, byte[] marks) {
+      this.layer = layer;
+      this.from = from;
+      this.to = to;
+      this.marks = marks;
     }
-    if (!exists) {
-      for (Node succor : mlcs.nextLocations(loc)) {
-        var su = nodes.get(succor);
-        if (null != su && null != su.precs) {
-          if (su.precs.contains(loc)) {
-            System.out.println("dd");
-            break;
-          }
-        }
+
+    @Override
+    protected void compute() {
+      if (to - from <= ChunkSize) {
+        markPrecs(layer, from, to, marks);
+      } else {
+        int mid = (from + to) >>> 1;
+        invokeAll(new Marking(layer, from, mid, marks), new Marking(layer, mid, to, marks));
       }
     }
-    return exists;
   }
 
   /**
@@ -198,8 +281,42 @@ public class Graph {
    * @param l
    * @return
    */
-  public HashMap<Node, Node> getLevel(int l) {
-    return layers[l];
+  @Override
+  public int[] getLevel(int l) {
+    if (layerSize(l) == 0) return new int[0];
+    return Arrays.copyOf(layers[l], layerSizes[l]);
+  }
+
+  /**
+   * How many nodes at the given level
+   */
+  public int layerSize(int l) {
+    if (null == layers[l]) return 0;
+    compact(l);
+    return layerSizes[l];
+  }
+
+  /**
+   * Drop the handles which have left layer l
+   */
+  private void compact(int l) {
+    int[] layer = layers[l];
+    int size = 0;
+    for (int i = 0; i < layerSizes[l]; i++) {
+      int h = layer[i];
+      if (store.level(h) == l) layer[size++] = h;
+    }
+    if (size < layer.length / 4) layers[l] = Arrays.copyOf(layer, Math.max(size, 16));
+    layerSizes[l] = size;
+    layerStales[l] = 0;
+  }
+
+  /**
+   * The character of node h
+   */
+  @Override
+  public char charAt(int h) {
+    return mlcs.seqs.get(0).charAt(store.coord(h, 0));
   }
 
   /**
@@ -207,7 +324,7 @@ public class Graph {
    *
    * @return
    */
-  public List<List<Node>> paths() {
+  public List<int[]> paths() {
     return paths(-1);
   }
 
@@ -217,31 +334,10 @@ public class Graph {
    * @return the path list
    * @limit -1 represent unlimit
    */
-  public List<List<Node>> paths(int limit) {
-    List<List<Node>> results = new ArrayList<>();
-    Stack<Node> stack = new Stack<>();
-    Stack<Node> path = new Stack<>();
-    Collection<Node> lasts = end.precs;
-    for (Node n : lasts) stack.push(n);
-
-    while ((limit < 0 || results.size() < limit) && !stack.isEmpty()) {
-      Node current = stack.peek();
-      if (!path.isEmpty() && path.peek().equals(current)) {
-        path.pop();
-        stack.pop();
-      } else {
-        path.push(current);
-        if (current.level == 1) {
-          List<Node> onePath = new ArrayList<>(path);
-          Collections.reverse(onePath);//堆栈的dump是从底部开始的。所以要取反
-          results.add(onePath);
-          stack.pop();
-          path.pop();
-        } else {
-          for (Node pres : current.precs) stack.push(pres);
-        }
-      }
-    }
+  public List<int[]> paths(int limit) {
+    List<int[]> results = new ArrayList<>();
+    var iterator = new PathIterator(this);
+    while ((limit < 0 || results.size() < limit) && iterator.hasNext()) results.add(iterator.next());
     return results;
   }
 
@@ -254,50 +350,18 @@ public class Graph {
    * @return
    */
   public Result stat(long totalCreateCount, long highestCapacity, long startAt) {
-    Node startLocation = mlcs.start;
-    Node endLocation = mlcs.end;
-    Node end = layers[maxLevel + 1].get(endLocation);
-    this.end = end;
-    //link();
-
-    Set<Node> keyLocs = new HashSet<Node>();
-    BigDecimal matchedCount = new BigDecimal(0); // Number of matched results
-    LinkedList<Node> queue = new LinkedList<>();
-
-    // The number of alternative paths from the virtual endpoint to the node, with an initial endpoint of 1
-    Map<Node, BigDecimal> routeCounts = new HashMap<Node, BigDecimal>();
-
-    routeCounts.put(endLocation, new BigDecimal(1));
-
-    Node queueEnd = endLocation;
-    queue.addLast(endLocation);
-
-    short currentLevel = end.level;
-    while (!queue.isEmpty()) {
-      Node loc = queue.removeFirst();
-      Node node = get(loc, currentLevel);
-      for (Node ploc : node.precs) {
-//        if (ploc.level != node.level - 1) {
-//          System.out.println(ploc);
-//        }
-        if (keyLocs.contains(ploc)) {
-          routeCounts.put(ploc, routeCounts.get(ploc).add(routeCounts.get(loc)));
-        } else {
-          keyLocs.add(ploc);
-          routeCounts.put(ploc, routeCounts.get(loc));
-          queue.addLast(ploc);
-        }
-      }
-      if (loc == queueEnd) {
-        if (!queue.isEmpty()) queueEnd = queue.getLast();
-        currentLevel -= 1;
-      }
-    }
-    keyLocs.remove(startLocation);
-    keyLocs.remove(endLocation);
-    matchedCount = routeCounts.get(startLocation);
+    return stat(totalCreateCount, highestCapacity, startAt, null);
+  }
 
-    return new Result(this, matchedCount, keyLocs.size(), maxLevel, totalCreateCount, highestCapacity,
+  /**
+   * Stat the MLCS count,counting each layer in the pool
+   *
+   * @param pool null for sequential
+   */
+  public Result stat(long totalCreateCount, long highestCapacity, long startAt, ForkJoinPool pool) {
+    var counter = new PathCounter(this);
+    BigDecimal matchedCount = new BigDecimal(counter.count(pool));
+    return new Result(this, matchedCount, counter.reachable(), maxLevel, totalCreateCount, highestCapacity,
       startAt, System.currentTimeMillis());
   }
 
@@ -306,19 +370,18 @@ public class Graph {
    */
   public void link() {
     int l = maxLevel;
+    int[] id = new int[store.dimension];
+    int[][] nexts = mlcs.newBuffer();
     while (l >= 0) {
-      HashMap<Node, Node> nexts = getLevel(l + 1);
-      Iterator<Node> iter = getLevel(l).values().iterator();
       boolean isLastLayer = l == maxLevel;
-      while (iter.hasNext()) {
-        Node n = iter.next();
-        List<Node> nextLocs = mlcs.nextLocations(n);
-        for (Node loc : nextLocs) {
-          Node next = nexts.get(loc);
-          if (next != null) next.addEdge(n);
+      for (int n : getLevel(l)) {
+        int count = mlcs.nextLocations(store.coords(n, id), nexts);
+        for (int i = 0; i < count; i++) {
+          int next = find(nexts[i]);
+          if (next >= 0 && store.level(next) == l + 1) store.addEdge(next, n);
         }
-        if ((nextLocs.isEmpty() && isLastLayer)) {
-          end.addEdge(n);
+        if ((count == 0 && isLastLayer)) {
+          store.addEdge(end, n);
         }
       }
       l -= 1;
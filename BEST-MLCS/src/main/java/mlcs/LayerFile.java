@@ -0,0 +1,151 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Key points on disk,a record of packed coordinates in the problem width for each point.
+ * The file is read through memory mapped segments,so it may be far larger than the heap.
+ */
+public class LayerFile {
+  static final int SegmentBytes = 1 << 30;
+
+  public final Path path;
+  public final int dimension;
+  public final Width width;
+  private final int recordBytes;
+  private final long size;
+  private final int segmentRecords;
+  private final MappedByteBuffer[] segments;
+
+  public LayerFile(Path path, int dimension, Width width) throws IOException {
+    this.path = path;
+    this.dimension = dimension;
+    this.width = width;
+    this.recordBytes = dimension * width.bytes;
+    this.segmentRecords = SegmentBytes / recordBytes;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      this.size = channel.size() / recordBytes;
+      segments = new MappedByteBuffer[(int) ((size + segmentRecords - 1) / segmentRecords)];
+      for (int i = 0; i < segments.length; i++) {
+        long from = (long) i * segmentRecords;
+        long records = Math.min(segmentRecords, size - from);
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, from * recordBytes, records * recordBytes);
+      }
+    }
+  }
+
+  /**
+   * Record count
+   */
+  public long size() {
+    return size;
+  }
+
+  public int coord(long i, int j) {
+    return width.get(segments[(int) (i / segmentRecords)], (int) (i % segmentRecords) * recordBytes + j * width.bytes);
+  }
+
+  public int[] coords(long i, int[] buffer) {
+    MappedByteBuffer segment = segments[(int) (i / segmentRecords)];
+    int offset = (int) (i % segmentRecords) * recordBytes;
+    for (int j = 0; j < dimension; j++) {
+      buffer[j] = width.get(segment, offset + j * width.bytes);
+    }
+    return buffer;
+  }
+
+  /**
+   * Lexicographic comparison of record i with the given coordinates
+   */
+  public int compare(long i, int[] id) {
+    MappedByteBuffer segment = segments[(int) (i / segmentRecords)];
+    int offset = (int) (i % segmentRecords) * recordBytes;
+    for (int j = 0; j < dimension; j++) {
+      int c = Integer.compare(width.get(segment, offset + j * width.bytes), id[j]);
+      if (c != 0) return c;
+    }
+    return 0;
+  }
+
+  /**
+   * The first record whose first coordinate is not less than the given one,in a lexicographic sorted file.
+   */
+  public long lowerBound(int first) {
+    long lo = 0, hi = size;
+    while (lo < hi) {
+      long mid = (lo + hi) >>> 1;
+      if (coord(mid, 0) < first) lo = mid + 1;
+      else hi = mid;
+    }
+    return lo;
+  }
+
+  /**
+   * Append records to a new file
+   */
+  public static class Writer implements Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+    private final int dimension;
+    private final Width width;
+    private long count;
+
+    public Writer(Path path, int dimension, Width width) throws IOException {
+      this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+      this.dimension = dimension;
+      this.width = width;
+    }
+
+    /**
+     * Write the record at the offset of a flat coordinates array
+     */
+    public void write(int[] coords, int offset) throws IOException {
+      if (buffer.remaining() < dimension * width.bytes) flush();
+      for (int j = 0; j < dimension; j++) {
+        width.put(buffer, coords[offset + j]);
+      }
+      count += 1;
+    }
+
+    public long count() {
+      return count;
+    }
+
+    private void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) channel.write(buffer);
+      buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Read only view of a layered key point graph,enough to walk its paths.
+ * Graph keeps it in memory,ResultFile reads it from a mapped binary result without loading.
+ */
+public interface LayeredGraph {
+
+  /**
+   * Level of the last mlcs character,the end node is one level above
+   */
+  int maxLevel();
+
+  int end();
+
+  /**
+   * Upper bound of the node handles
+   */
+  int nodeLimit();
+
+  /**
+   * Level of the node,negative for removed nodes
+   */
+  int level(int node);
+
+  int degree(int node);
+
+  /**
+   * The i-th predecessor of the node
+   */
+  int prec(int node, int i);
+
+  int[] getLevel(int l);
+
+  /**
+   * The character of the node
+   */
+  char charAt(int node);
+
+  /**
+   * Stream the MLCS paths lazily
+   *
+   * @param skip  paths to jump over without visiting them
+   * @param limit -1 represent unlimit
+   */
+  default Stream<int[]> paths(long skip, long limit) {
+    var iterator = new PathIterator(this);
+    iterator.skip(skip);
+    var paths = StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+      Spliterator.ORDERED | Spliterator.NONNULL), false);
+    return limit < 0 ? paths : paths.limit(limit);
+  }
+
+  /**
+   * Stream the MLCS strings lazily
+   *
+   * @see #paths(long, long)
+   */
+  default Stream<String> mlcs(long skip, long limit) {
+    return paths(skip, limit).map(path -> {
+      char[] chars = new char[path.length];
+      for (int i = 0; i < path.length; i++) chars[i] = charAt(path[i]);
+      return new String(chars);
+    });
+  }
+}
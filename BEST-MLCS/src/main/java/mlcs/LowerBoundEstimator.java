@@ -3,43 +3,279 @@ package mlcs;
 import mlcs.util.Stopwatch;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
 public class LowerBoundEstimator {
 
+  /**
+   * How to rank the points of a beam,the lower score the better
+   */
+  public enum Scorer {
+    /** coordinate sum,prefer the points consumed least characters */
+    Sum,
+    /** maximum coordinate,prefer the points without a far ahead sequence */
+    MaxCoord,
+    /** tail upbound,prefer the points which may reach the longest */
+    TailUpbound;
+
+    int score(Mlcs mlcs, NodeStore store, int h, int[] buffer) {
+      switch (this) {
+        case Sum:
+          return store.sum(h);
+        case MaxCoord:
+          int max = 0;
+          for (int i = 0; i < store.dimension; i++) max = Math.max(max, store.coord(h, i));
+          return max;
+        default:
+          return Integer.MAX_VALUE - mlcs.tailUpbound(store.coords(h, buffer));
+      }
+    }
+
+    public static Scorer of(String name) {
+      for (Scorer s : values()) {
+        if (s.name().equalsIgnoreCase(name)) return s;
+      }
+      throw new IllegalArgumentException("Unknown scorer " + name);
+    }
+  }
+
+  private static final int ChunkSize = 64;
+
+  /**
+   * Run one beam which records the parents of its points.
+   *
+   * @param deadline stop at this time in millis,0 for unlimited
+   * @return a common subsequence found by the beam,or null if the deadline passed
+   */
+  public static String witness(Mlcs mlcs, int width, ForkJoinPool pool, Scorer scorer, long deadline) {
+    var beam = new Beam(mlcs, width, pool, scorer);
+    beam.history = new ArrayList<>();
+    beam.deadline = deadline;
+    int level = beam.run();
+    if (level < 0) return null;
+    StringBuilder sb = new StringBuilder(level);
+    int route = 0;
+    for (int l = level; l > 0; l--) {
+      int[] parents = beam.history.get(l - 1);
+      // the second half of each level are the characters
+      sb.append((char) parents[parents.length / 2 + route]);
+      route = parents[route];
+    }
+    return sb.reverse().toString();
+  }
 
   /**
    * Try to find a approximate length of the given MLCS
    */
-  public static short estimate(Mlcs mlcs, int estimateCount) {
-    var startTime = System.currentTimeMillis();
-    List<Node> routes = List.of(mlcs.start);
-    Node.SumSorter sorter = new Node.SumSorter(mlcs);
-    ForkJoinPool pool = mlcs.newPool();
-    short level = 0;
-    while (!routes.isEmpty()) {
-      level += 1;
-      HashSet<Node> nexts = new HashSet<>();
-      for (Node a : routes) nexts.addAll(mlcs.nextLocations(a));
-      if (nexts.isEmpty()) {
-        level -= 1;
-        break;
-      }
-      ArrayList<Node> fronts = new ArrayList<>(nexts);
-      // sorting and filtering
-      if (fronts.size() <= estimateCount) {
-        routes = fronts;
+  public static int estimate(Mlcs mlcs, int estimateCount) {
+    return estimate(mlcs, estimateCount, null, Scorer.Sum);
+  }
+
+  /**
+   * Run a beam for every scorer and return the longest common subsequence found.
+   *
+   * @param pool    expand and score each level in the pool,null for sequential
+   * @param scorers
+   */
+  public static int estimate(Mlcs mlcs, int estimateCount, ForkJoinPool pool, Scorer... scorers) {
+    return estimate(mlcs, estimateCount, pool, true, scorers);
+  }
+
+  /**
+   * @param verbose print the length found by every scorer
+   */
+  public static int estimate(Mlcs mlcs, int estimateCount, ForkJoinPool pool, boolean verbose,
+                               Scorer... scorers) {
+    int best = 0;
+    for (Scorer scorer : scorers) {
+      var startTime = System.currentTimeMillis();
+      int level = new Beam(mlcs, estimateCount, pool, scorer).run();
+      if (verbose) System.out.println("\restimate mlcs length " + level + " 100% (reserve " + estimateCount + " points,"
+        + scorer + ") using " + Stopwatch.format(System.currentTimeMillis() - startTime));
+      if (level > best) best = level;
+    }
+    return best;
+  }
+
+  /**
+   * Beam search keeping the best estimateCount points of every level.
+   * Points live in reused node stores,so nothing is allocated per successor.
+   */
+  private static class Beam {
+    final Mlcs mlcs;
+    final int width;
+    final ForkJoinPool pool;
+    final Scorer scorer;
+    final int dimension;
+
+    NodeStore routes;
+    NodeStore fronts;
+    final NodeIndex frontIndex;
+    long[] keys = new long[16];
+    // successors of each chunk of routes,the level of a successor is its parent offset in the chunk
+    NodeStore[] expanded = new NodeStore[0];
+    int[] frontParents = new int[16];
+    // parents and characters of the routes of every level,null if not needed
+    List<int[]> history;
+    long deadline;
+
+    Beam(Mlcs mlcs, int width, ForkJoinPool pool, Scorer scorer) {
+      this.mlcs = mlcs;
+      this.width = width;
+      this.pool = pool;
+      this.scorer = scorer;
+      this.dimension = mlcs.seqs.size();
+      this.routes = new NodeStore(dimension, mlcs.width, 10);
+      this.fronts = new NodeStore(dimension, mlcs.width, 10);
+      this.frontIndex = new NodeIndex(fronts);
+    }
+
+    int run() {
+      routes.add(mlcs.start.id, 0);
+      int[] buffer = new int[dimension];
+      int level = 0;
+      while (routes.size() > 0) {
+        if (deadline > 0 && System.currentTimeMillis() > deadline) return -1;
+        level += 1;
+        expand();
+        int size = fronts.size();
+        if (size == 0) {
+          level -= 1;
+          break;
+        }
+        // scoring and selecting,keep the first found one among the same score
+        if (keys.length < size) keys = new long[Math.max(size, keys.length * 2)];
+        if (size > width) {
+          forEach((size + ChunkSize - 1) / ChunkSize, c -> {
+            int[] b = new int[dimension];
+            for (int f = c * ChunkSize, end = Math.min(size, f + ChunkSize); f < end; f++) {
+              keys[f] = ((long) scorer.score(mlcs, fronts, f, b) << 32) | f;
+            }
+          });
+          select(keys, 0, size, width);
+        } else {
+          for (int f = 0; f < size; f++) keys[f] = f;
+        }
+        routes.clear();
+        int n = Math.min(size, width);
+        int[] parents = (null == history) ? null : new int[n * 2];
+        for (int i = 0; i < n; i++) {
+          routes.add(fronts.coords((int) keys[i], buffer), level);
+          if (null != parents) {
+            parents[i] = frontParents[(int) keys[i]];
+            parents[n + i] = mlcs.seqs.get(0).charAt(buffer[0]);
+          }
+        }
+        if (null != parents) history.add(parents);
+      }
+      return level;
+    }
+
+    /**
+     * Successors of all routes,deduplicated in the order of the routes
+     */
+    void expand() {
+      int chunks = (routes.size() + ChunkSize - 1) / ChunkSize;
+      if (expanded.length < chunks) {
+        NodeStore[] e = new NodeStore[chunks];
+        System.arraycopy(expanded, 0, e, 0, expanded.length);
+        for (int i = expanded.length; i < chunks; i++) e[i] = new NodeStore(dimension, mlcs.width, 8);
+        expanded = e;
+      }
+      forEach(chunks, c -> {
+        NodeStore store = expanded[c];
+        store.clear();
+        NodeIndex index = new NodeIndex(store, ChunkSize * 2);
+        int[] current = new int[dimension];
+        int[][] nexts = mlcs.newBuffer();
+        for (int a = c * ChunkSize, end = Math.min(routes.size(), a + ChunkSize); a < end; a++) {
+          int count = mlcs.nextLocations(routes.coords(a, current), nexts);
+          for (int i = 0; i < count; i++) {
+            if (index.find(nexts[i]) < 0) index.add(store.add(nexts[i], a & (ChunkSize - 1)), 0);
+          }
+        }
+      });
+      fronts.clear();
+      frontIndex.clear();
+      int[] buffer = new int[dimension];
+      for (int c = 0; c < chunks; c++) {
+        NodeStore store = expanded[c];
+        for (int h = 0; h < store.size(); h++) {
+          store.coords(h, buffer);
+          if (frontIndex.find(buffer) < 0) {
+            int f = fronts.add(buffer, 0);
+            frontIndex.add(f, 0);
+            if (f == frontParents.length) frontParents = Arrays.copyOf(frontParents, f * 2);
+            frontParents[f] = c * ChunkSize + store.level(h);
+          }
+        }
+      }
+    }
+
+    /**
+     * Run task(0..count-1) in the pool,or in the current thread
+     */
+    void forEach(int count, IntConsumer task) {
+      if (null == pool || count == 1) {
+        for (int i = 0; i < count; i++) task.accept(i);
       } else {
-        fronts.sort(sorter);
-        routes = fronts.subList(0, estimateCount);
+        pool.invoke(new Forking(task, 0, count));
       }
     }
-    System.out.println("\restimate mlcs length " + level + " 100% (reserve " + estimateCount + " points) using "
-      + Stopwatch.format(System.currentTimeMillis() - startTime));
-    pool.shutdown();
-    return level;
   }
 
+  private static class Forking extends RecursiveAction {
+    final IntConsumer task;
+    final int from, to;
+
+    Forking(IntConsumer task, int from, int to) {
+      this.task = task;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from == 1) {
+        task.accept(from);
+      } else {
+        int mid = (from + to) >>> 1;
+        invokeAll(new Forking(task, from, mid), new Forking(task, mid, to));
+      }
+    }
+  }
+
+  /**
+   * Move the k smallest of the distinct keys[from,to) to the front
+   */
+  static void select(long[] keys, int from, int to, int k) {
+    int lo = from, hi = to - 1, target = from + k - 1;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      // median of three as the pivot
+      if (keys[mid] < keys[lo]) swap(keys, mid, lo);
+      if (keys[hi] < keys[lo]) swap(keys, hi, lo);
+      if (keys[hi] < keys[mid]) swap(keys, hi, mid);
+      long pivot = keys[mid];
+      int i = lo, j = hi;
+      while (i <= j) {
+        while (keys[i] < pivot) i++;
+        while (keys[j] > pivot) j--;
+        if (i <= j) swap(keys, i++, j--);
+      }
+      if (target <= j) hi = j;
+      else if (target >= i) lo = i;
+      else return;
+    }
+  }
+
+  private static void swap(long[] keys, int i, int j) {
+    long t = keys[i];
+    keys[i] = keys[j];
+    keys[j] = t;
+  }
 }
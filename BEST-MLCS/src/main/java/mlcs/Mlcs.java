@@ -18,6 +18,8 @@
  */
 package mlcs;
 
+import mlcs.util.Stopwatch;
+
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
@@ -30,41 +32,62 @@ import java.util.concurrent.ForkJoinPool;
  * MLCS problem model
  */
 public class Mlcs {
-  final Set<Character> charset; // the character that All strings of this problem consist of
+  public final Alphabet alphabet; // the characters that all strings of this problem consist of
   public final List<Sequence> seqs; // Primitive character sequence
 
   public final Node start; //startNode
   public final Node end; // endNode
 
-  short[][][] successorTable; // char->seq->table
+  final SuccessorTables tables; // successors and distances
   short[][][] predecessorTable; // char->seq->table
-  short[][][] distanceTable;// char->seq->table
+  int[][][] intPredecessorTable; // char->seq->table,instead of the short one for int width
+  PairwiseLcs pairwise; // optional suffix lcs of sequence pairs
   // maximum current subscript set
   public final int maxLength;
+  // storage width of the coordinates
+  public final Width width;
   int maxThread = 0;
 
   /**
    * building successor tables
    */
   public Mlcs(Set<Character> charset, List<Sequence> seqs) {
-    this.charset = charset;
-    this.seqs = seqs;
+    this(Alphabet.of(charset), seqs, SuccessorTables.Layout.Jagged);
+  }
+
+  /**
+   * @param seqs sequences of another alphabet are encoded again
+   */
+  public Mlcs(Alphabet alphabet, List<Sequence> seqs, SuccessorTables.Layout layout) {
+    this.alphabet = alphabet;
+    List<Sequence> encoded = new ArrayList<>(seqs.size());
+    for (Sequence seq : seqs) encoded.add(seq.encode(alphabet));
+    this.seqs = encoded;
     start = Mlcs.buildStart(seqs.size());
     end = Mlcs.buildEnd(seqs);
-    successorTable = new short[charset.size()][][];
-    predecessorTable = new short[charset.size()][][];
-    distanceTable = new short[charset.size()][][];
-    List<Character> charList = new ArrayList<Character>(charset);
-
-    for (int i = 0; i < charList.size(); i++) {
-      successorTable[i] = new short[seqs.size()][];
-      predecessorTable[i] = new short[seqs.size()][];
-      distanceTable[i] = new short[seqs.size()][];
-      for (int j = 0; j < seqs.size(); j++) {
-        Sequence seq = seqs.get(j);
-        successorTable[i][j] = seq.buildSuccessors(charList.get(i).charValue());
-        predecessorTable[i][j] = seq.buildPredecessors(charList.get(i).charValue());
-        distanceTable[i][j] = seq.buildDistance(charList.get(i).charValue());
+    int maxCoord = 0;
+    for (int e : end.id) maxCoord = Math.max(maxCoord, e);
+    width = Width.of(maxCoord);
+    int charCount = alphabet.size();
+    if (SuccessorTables.sparse(layout, charCount, this.seqs)) {
+      if (layout != SuccessorTables.Layout.Sparse) {
+        System.out.println("dense tables need " + (SuccessorTables.denseMemory(charCount, this.seqs) >> 20)
+          + "MB,using sparse tables");
+        layout = SuccessorTables.Layout.Sparse;
+      }
+    } else if (width == Width.Int) {
+      intPredecessorTable = new int[charCount][seqs.size()][];
+      for (int i = 0; i < charCount; i++) {
+        for (int j = 0; j < seqs.size(); j++) {
+          intPredecessorTable[i][j] = seqs.get(j).tables().intPredecessors(alphabet.symbol(i));
+        }
+      }
+    } else {
+      predecessorTable = new short[charCount][seqs.size()][];
+      for (int i = 0; i < charCount; i++) {
+        for (int j = 0; j < seqs.size(); j++) {
+          predecessorTable[i][j] = seqs.get(j).tables().predecessors(alphabet.symbol(i));
+        }
       }
     }
 
@@ -74,6 +97,7 @@ public class Mlcs {
       if (s.length() - 1 < minOfSeq) minOfSeq = s.length() - 1;
     }
     maxLength = minOfSeq;
+    tables = SuccessorTables.build(layout, width, alphabet, this.seqs, maxLength);
   }
 
   /**
@@ -82,17 +106,32 @@ public class Mlcs {
    * @param index
    * @return
    */
-  public int tailUpbound(short[] index) {
-    int bound = 0;
-    for (int i = 0; i < distanceTable.length; i++) {
-      short minOfChar = Short.MAX_VALUE;
-      for (int j = 0; j < seqs.size(); j++) {
-        short d = distanceTable[i][j][index[j]];
-        if (d < minOfChar) minOfChar = d;
-      }
-      bound += minOfChar;
+  public int tailUpbound(int[] index) {
+    int bound = tables.tailUpbound(index);
+    return null == pairwise ? bound : pairwise.upbound(index, bound);
+  }
+
+  /**
+   * Tighten the tail upbound with the suffix LCS of all sequence pairs
+   */
+  public void usePairwiseBound() {
+    var startTime = System.currentTimeMillis();
+    pairwise = new PairwiseLcs(seqs);
+    System.out.println("pairwise lcs tables " + (pairwise.memory() >> 10) + "KB using "
+      + Stopwatch.format(System.currentTimeMillis() - startTime));
+  }
+
+  /**
+   * Bytes occupied by the successor,distance and predecessor tables,estimated from the sequence lengths
+   */
+  public long memory() {
+    long bytes = 0;
+    if (tables.layout() == SuccessorTables.Layout.Sparse) {
+      for (Sequence s : seqs) bytes += s.tables(true).memory();
+    } else {
+      bytes = SuccessorTables.denseMemory(alphabet.size(), seqs);
     }
-    return bound;
+    return null == pairwise ? bytes : bytes + pairwise.memory();
   }
 
   public char charAt(Node location) {
@@ -107,37 +146,119 @@ public class Mlcs {
    * All successors after the current node
    */
   public List<Node> nextLocations(Node current) {
-    List<Node> nexts = new ArrayList<Node>(charset.size());
-    for (int i = 0; i < successorTable.length; i++) {
-      int snum = seqs.size();
-      short[] tmp = new short[snum];
-      for (int j = 0; j < seqs.size(); j++) {
-        short successor = successorTable[i][j][current.id[j]];
-        if (successor < 0 || successor > maxLength) break;
-        else tmp[j] = successor;
-      }
-      if (tmp[tmp.length - 1] > 0) nexts.add(new Node(tmp));
+    int[][] buffer = newBuffer();
+    int count = nextLocations(current.id, buffer);
+    List<Node> nexts = new ArrayList<Node>(count);
+    for (int i = 0; i < count; i++) {
+      nexts.add(new Node(buffer[i]));
     }
     return nexts;
   }
 
+  /**
+   * Buffer of nextLocations,one row for each character
+   */
+  public int[][] newBuffer() {
+    return new int[tables.charCount][seqs.size()];
+  }
+
+  /**
+   * Write all successors after the current location into the rows of buffer.
+   * Nothing is allocated,and the rows are overwritten by the next call.
+   *
+   * @param current
+   * @param buffer
+   * @return the count of successors
+   */
+  public int nextLocations(int[] current, int[][] buffer) {
+    return tables.nextLocations(current, buffer);
+  }
+
+  /**
+   * Write all predecessors before the current location into the rows of buffer,
+   * a predecessor is the last location of a character before the current one in every sequence.
+   * Like the successors,locations beyond the max length are left out,so the end looks back from maxLength+1.
+   *
+   * @return the count of predecessors
+   */
+  public int prevLocations(int[] current, int[][] buffer) {
+    int limit = maxLength + 1;
+    for (int c : current) {
+      if (c > limit) {
+        current = current.clone();
+        for (int i = 0; i < current.length; i++) current[i] = Math.min(current[i], limit);
+        break;
+      }
+    }
+    if (tables instanceof SuccessorTables.Sparse) {
+      return ((SuccessorTables.Sparse) tables).prevLocations(current, buffer);
+    }
+    if (null != intPredecessorTable) return prevLocations(intPredecessorTable, current, buffer);
+    int count = 0;
+    for (short[][] table : predecessorTable) {
+      int[] row = buffer[count];
+      boolean found = true;
+      for (int i = 0; i < row.length && found; i++) {
+        row[i] = table[i][current[i]];
+        found = row[i] > 0;
+      }
+      if (found) count += 1;
+    }
+    return count;
+  }
+
+  private static int prevLocations(int[][][] tables, int[] current, int[][] buffer) {
+    int count = 0;
+    for (int[][] table : tables) {
+      int[] row = buffer[count];
+      boolean found = true;
+      for (int i = 0; i < row.length && found; i++) {
+        row[i] = table[i][current[i]];
+        found = row[i] > 0;
+      }
+      if (found) count += 1;
+    }
+    return count;
+  }
+
+  /**
+   * The leftmost locations of a common subsequence
+   *
+   * @param subsequence
+   * @return one location for each character,or null if it is not a common subsequence
+   */
+  public int[][] embed(CharSequence subsequence) {
+    int[][] path = new int[subsequence.length()][];
+    int[][] nexts = newBuffer();
+    int[] current = start.id;
+    for (int i = 0; i < path.length; i++) {
+      int count = nextLocations(current, nexts);
+      int[] next = null;
+      for (int j = 0; j < count && null == next; j++) {
+        if (seqs.get(0).charAt(nexts[j][0]) == subsequence.charAt(i)) next = nexts[j].clone();
+      }
+      if (null == next) return null;
+      path[i] = next;
+      current = next;
+    }
+    return path;
+  }
+
   /**
    * build start node
    */
   public static Node buildStart(int length) {
-    var node= new Node(new short[length]);
-    node.precs = new HashSet<>();
-    return node;
+    return new Node(new int[length]);
   }
 
   /**
    * build end node
    */
   public static Node buildEnd(List<Sequence> seqs) {
-    short[] index = new short[seqs.size()];
+    int[] index = new int[seqs.size()];
     int i = 0;
     for (Sequence seq : seqs) {
-      index[i] = (short) seq.length();
+      index[i] = seq.length();
       i += 1;
     }
     return new Node(index);
@@ -167,14 +288,25 @@ public class Mlcs {
    * @return
    */
   public static Mlcs build(String[] strs) {
+    return build(strs, SuccessorTables.Layout.Jagged);
+  }
+
+  /**
+   * Build the mlcs model using given strings and table layout
+   */
+  public static Mlcs build(String[] strs, SuccessorTables.Layout layout) {
+    String[] cleaned = new String[strs.length];
+    for (int i = 0; i < strs.length; i++) cleaned[i] = Sequence.clean(strs[i]);
+    Alphabet alphabet = Alphabet.of(cleaned);
     List<Sequence> seqs = new ArrayList<Sequence>();
-    Set<Character> charsets = new java.util.HashSet<Character>();
-    for (String str : strs) {
-      Sequence s = Sequence.build(str);
-      seqs.add(s);
-      charsets.addAll(s.charsets());
+    for (String str : cleaned) seqs.add(new Sequence(str, alphabet));
+    boolean sparse = SuccessorTables.sparse(layout, alphabet.size(), seqs);
+    SequenceCache cache = SequenceCache.shared();
+    for (Sequence s : seqs) {
+      if (null == cache) s.tables(sparse);
+      else s.tables = cache.get(s, sparse);
     }
-    return new Mlcs(charsets, seqs);
+    return new Mlcs(alphabet, seqs, layout);
   }
 
   /**
@@ -183,15 +315,15 @@ public class Mlcs {
    * @return
    */
   public BigDecimal matchedCounts() {
-    Map<Character, Integer>[] stats = new Map[seqs.size()];
+    int[][] stats = new int[seqs.size()][];
     for (int i = 0; i < seqs.size(); i++) {
-      stats[i] = seqs.get(i).charCounts();
+      stats[i] = seqs.get(i).codeCounts();
     }
     BigDecimal rs = new BigDecimal(0);
-    for (Character c : charset) {
-      BigDecimal crs = new BigDecimal(stats[0].get(c));
+    for (int c = 0; c < alphabet.size(); c++) {
+      BigDecimal crs = new BigDecimal(stats[0][c]);
       for (int i = 1; i < seqs.size(); i++) {
-        crs = crs.multiply(new BigDecimal(stats[i].get(c)));
+        crs = crs.multiply(new BigDecimal(stats[i][c]));
       }
       rs = rs.add(crs);
     }
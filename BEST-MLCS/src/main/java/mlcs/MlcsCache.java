@@ -0,0 +1,168 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Built problem models keyed by a sha-256 of the sequences and the table options.
+ * Models are built outside any lock,concurrent requests of the same key wait for the first build.
+ * Models are evicted in least recently used order once their tables exceed the memory budget,
+ * the most recent model is always kept.A cached model is read only,so concurrent searches may share it.
+ */
+public class MlcsCache {
+  private final long budget;
+  private final ConcurrentHashMap<String, CompletableFuture<Mlcs>> models = new ConcurrentHashMap<>();
+  // built keys in access order with their table bytes,guarded by itself
+  private final LinkedHashMap<String, Long> recent = new LinkedHashMap<>(16, 0.75f, true);
+  private long memory;
+
+  private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), evictions = new AtomicLong();
+
+  /**
+   * A model and whether it came from the cache
+   */
+  public static final class Entry {
+    public final Mlcs mlcs;
+    public final boolean cached;
+
+    Entry(Mlcs mlcs, boolean cached) {
+      this.mlcs = mlcs;
+      this.cached = cached;
+    }
+  }
+
+  /**
+   * @param budget bytes of tables to keep
+   */
+  public MlcsCache(long budget) {
+    this.budget = budget;
+  }
+
+  /**
+   * The cached model of the sequences or a newly built one
+   */
+  public Entry get(String[] strs, SuccessorTables.Layout layout, boolean pairwise) {
+    String key = key(strs, layout, pairwise);
+    var building = new CompletableFuture<Mlcs>();
+    var existing = models.putIfAbsent(key, building);
+    if (null != existing) {
+      hits.incrementAndGet();
+      Mlcs mlcs = await(existing);
+      synchronized (recent) {
+        recent.get(key);
+      }
+      return new Entry(mlcs, true);
+    }
+    misses.incrementAndGet();
+    Mlcs mlcs;
+    try {
+      mlcs = Mlcs.build(strs, layout);
+      if (pairwise) mlcs.usePairwiseBound();
+    } catch (RuntimeException | Error e) {
+      models.remove(key, building);
+      building.completeExceptionally(e);
+      throw e;
+    }
+    building.complete(mlcs);
+    admit(key, mlcs.memory());
+    return new Entry(mlcs, false);
+  }
+
+  /**
+   * Account the built model and evict the least recently used ones over the budget
+   */
+  private void admit(String key, long bytes) {
+    synchronized (recent) {
+      recent.put(key, bytes);
+      memory += bytes;
+      Iterator<Map.Entry<String, Long>> iter = recent.entrySet().iterator();
+      while (memory > budget && recent.size() > 1) {
+        var eldest = iter.next();
+        memory -= eldest.getValue();
+        models.remove(eldest.getKey());
+        iter.remove();
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * The value of a build of another thread,its failure is rethrown as is
+   */
+  static <T> T await(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw e;
+    }
+  }
+
+  public int size() {
+    synchronized (recent) {
+      return recent.size();
+    }
+  }
+
+  public long memory() {
+    synchronized (recent) {
+      return memory;
+    }
+  }
+
+  public long hits() {
+    return hits.get();
+  }
+
+  public long misses() {
+    return misses.get();
+  }
+
+  public long evictions() {
+    return evictions.get();
+  }
+
+  static String key(String[] strs, SuccessorTables.Layout layout, boolean pairwise) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    for (String str : strs) {
+      digest.update(str.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) '\n');
+    }
+    StringBuilder sb = new StringBuilder(80);
+    for (byte b : digest.digest()) sb.append(String.format("%02x", b));
+    return sb.append(':').append(layout).append(pairwise ? ":pairwise" : "").toString();
+  }
+}
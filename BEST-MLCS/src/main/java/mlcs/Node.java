@@ -21,8 +21,6 @@ package mlcs;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashSet;
-import java.util.Set;
 
 /**
  * The location of a single character in all strings
@@ -30,54 +28,21 @@ import java.util.Set;
 public class Node implements Serializable {
   private static final long serialVersionUID = -1561971028727693347L;
 
-  public short[] id;// position information
+  public int[] id;// position information
   private int hashCode; // hash code
-  public short level;
-  public Set<Node> precs;
+  public int level;
 
   public int sum() {
     int sum = 0;
-    for (short i : id) {
+    for (int i : id) {
       sum += i;
     }
     return sum;
   }
 
-  public void updateLevel(short n){
+  public void updateLevel(int n){
     this.level=n;
   }
-  /**
-   * link precursor to this nodes
-   *
-   * @param prec
-   */
-  public void addEdge(Node prec) {
-    if (null == precs) {
-      precs = new HashSet<>();
-    }
-    precs.add(prec);
-  }
-
-  /**
-   * link precursor to this nodes
-   *
-   * @param prec
-   */
-  public void setEdge(Node prec) {
-    if (null == precs) {
-      precs = new HashSet<>();
-    }
-
-    var removed = new HashSet<Node>();
-    for (Node p : this.precs) {
-      if (p.level < this.level - 1) {
-        removed.add(p);
-      }
-    }
-    precs.removeAll(removed);
-    precs.add(prec);
-  }
-
   @Override
   public String toString() {
     String str = Arrays.toString(id);
@@ -85,7 +50,7 @@ public class Node implements Serializable {
     return "(" + str.substring(1, str.length() - 1) + ")";
   }
 
-  public Node(short[] index) {
+  public Node(int[] index) {
     this.id = index;
     this.hashCode = buildHashCode();
   }
@@ -109,8 +74,8 @@ public class Node implements Serializable {
   public boolean equals(Object o) {
     Node bl = (Node) o;
     if (bl == this) return true;
-    short[] b = bl.id;
-    short[] a = id;
+    int[] b = bl.id;
+    int[] a = id;
     int i = 0;
     boolean equals = true;
     while (i < a.length && equals) {
@@ -0,0 +1,201 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash index from coordinates to node handles.
+ * Each slot is a long packing [fingerprint:16][level:16][handle+1:32],so a probe
+ * finds the handle and the level of a key point without touching the node store,
+ * and only compares coordinates when the fingerprints match.
+ * Levels of int width stores take 24 bits and leave 8 bits to the fingerprint.
+ */
+public class NodeIndex {
+  private static final double MaxLoad = 0.7;
+  private static final long HandleMask = 0xFFFFFFFFL;
+
+  private final NodeStore store;
+  private final int fingerprintBits;
+  private final long levelMask;
+  private long[] slots;
+  private int shift; // 64 - log2(slots.length)
+  private int size = 0;
+
+  public NodeIndex(NodeStore store) {
+    this(store, 1 << 10);
+  }
+
+  public NodeIndex(NodeStore store, int capacity) {
+    this.store = store;
+    this.fingerprintBits = store.width == Width.Int ? 8 : 16;
+    this.levelMask = (1L << (32 - fingerprintBits)) - 1;
+    int bits = 32 - Integer.numberOfLeadingZeros(Math.max(capacity, 16) - 1);
+    this.slots = new long[1 << bits];
+    this.shift = 64 - bits;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Remove all slots but keep the capacity
+   */
+  public void clear() {
+    Arrays.fill(slots, 0);
+    size = 0;
+  }
+
+  /**
+   * Find the slot of given coordinates
+   *
+   * @param id
+   * @return slot or -1
+   */
+  public int find(int[] id) {
+    long hash = hash(id);
+    int mask = slots.length - 1;
+    int i = (int) (hash >>> shift);
+    long fp = fingerprint(hash);
+    while (true) {
+      long slot = slots[i];
+      if (slot == 0) return -1;
+      if ((slot >>> (64 - fingerprintBits)) == fp && store.matches((int) (slot & HandleMask) - 1, id)) return i;
+      i = (i + 1) & mask;
+    }
+  }
+
+  /**
+   * Find the slot of an indexed handle
+   *
+   * @param h
+   * @return slot or -1
+   */
+  public int slotOf(int h) {
+    long hash = hash(h);
+    int mask = slots.length - 1;
+    int i = (int) (hash >>> shift);
+    while (true) {
+      long slot = slots[i];
+      if (slot == 0) return -1;
+      if ((slot & HandleMask) == h + 1) return i;
+      i = (i + 1) & mask;
+    }
+  }
+
+  public int handle(int slot) {
+    return (int) (slots[slot] & HandleMask) - 1;
+  }
+
+  public int level(int slot) {
+    // shift the fingerprint out and sign extend the level
+    return (int) ((slots[slot] << fingerprintBits) >> (32 + fingerprintBits));
+  }
+
+  public void updateLevel(int slot, int level) {
+    slots[slot] = (slots[slot] & ~(levelMask << 32)) | ((level & levelMask) << 32);
+  }
+
+  /**
+   * Index the handle h,which must not be indexed yet.
+   *
+   * @param h
+   * @param level
+   */
+  public void add(int h, int level) {
+    if (size + 1 > slots.length * MaxLoad) resize();
+    long hash = hash(h);
+    place((fingerprint(hash) << (64 - fingerprintBits)) | ((level & levelMask) << 32) | (h + 1L), hash);
+    size += 1;
+  }
+
+  /**
+   * Remove the given slot,following slots of the probe sequence are shifted back.
+   *
+   * @param slot
+   */
+  public void remove(int slot) {
+    int mask = slots.length - 1;
+    int hole = slot;
+    int i = (hole + 1) & mask;
+    while (slots[i] != 0) {
+      int home = (int) (hash((int) (slots[i] & HandleMask) - 1) >>> shift);
+      // move slot i into the hole if its home is not within (hole,i]
+      if (((i - home) & mask) >= ((i - hole) & mask)) {
+        slots[hole] = slots[i];
+        hole = i;
+      }
+      i = (i + 1) & mask;
+    }
+    slots[hole] = 0;
+    size -= 1;
+  }
+
+  private void place(long slot, long hash) {
+    int mask = slots.length - 1;
+    int i = (int) (hash >>> shift);
+    while (slots[i] != 0) i = (i + 1) & mask;
+    slots[i] = slot;
+  }
+
+  private void resize() {
+    long[] old = slots;
+    slots = new long[old.length * 2];
+    shift -= 1;
+    for (long slot : old) {
+      if (slot != 0) place(slot, hash((int) (slot & HandleMask) - 1));
+    }
+  }
+
+  private long fingerprint(long hash) {
+    return hash & ((1L << fingerprintBits) - 1);
+  }
+
+  /**
+   * Hash of the coordinates stored for handle h,the same as hash(int[]).
+   */
+  private long hash(int h) {
+    long rs = store.dimension;
+    for (int i = 0; i < store.dimension; i++) {
+      rs = (rs + store.coord(h, i)) * 0x9E3779B97F4A7C15L;
+    }
+    return mix(rs);
+  }
+
+  static long hash(int[] id) {
+    long rs = id.length;
+    for (int s : id) {
+      rs = (rs + s) * 0x9E3779B97F4A7C15L;
+    }
+    return mix(rs);
+  }
+
+  /**
+   * Finalizer of murmur3,every input bit affects every output bit.
+   */
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -0,0 +1,327 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.util.Arrays;
+
+/**
+ * Compact storage of key points.
+ * A node is an int handle. Its coordinates live in a flat arena of the problem width,
+ * its level and precursors in parallel primitive arrays.
+ * All arrays are paged, so growing never copies the whole store.
+ */
+public class NodeStore {
+  static final int DefaultPageBits = 16;
+
+  public final int dimension;
+  public final Width width;
+  private final int pageBits;
+  private final int pageMask;
+
+  // page -> flat coordinates,only the array of the width is used
+  private byte[][] bytes = new byte[0][];
+  private short[][] shorts = new short[0][];
+  private int[][] ints = new int[0][];
+  // page -> level,levels are ints only when coordinates are
+  private short[][] levels = new short[0][];
+  private int[][] intLevels = new int[0][];
+  private int[][][] edges = new int[0][][]; // page -> precursors,edges[h][0] is the count
+
+  private int size = 0;
+
+  public NodeStore(int dimension, Width width) {
+    this(dimension, width, DefaultPageBits);
+  }
+
+  /**
+   * @param dimension sequence count
+   * @param width     storage width of the coordinates
+   * @param pageBits  log2 of nodes per page,small stores use small pages
+   */
+  public NodeStore(int dimension, Width width, int pageBits) {
+    this.dimension = dimension;
+    this.width = width;
+    this.pageBits = pageBits;
+    this.pageMask = (1 << pageBits) - 1;
+  }
+
+  /**
+   * Append a node and return its handle
+   *
+   * @param index coordinates
+   * @param level
+   * @return
+   */
+  public int add(int[] index, int level) {
+    int h = size;
+    int page = h >>> pageBits;
+    if (page == edges.length) grow(page);
+    int offset = h & pageMask;
+    int from = offset * dimension;
+    switch (width) {
+      case Byte:
+        byte[] b = bytes[page];
+        for (int i = 0; i < dimension; i++) b[from + i] = (byte) index[i];
+        levels[page][offset] = (short) level;
+        break;
+      case Short:
+        short[] s = shorts[page];
+        for (int i = 0; i < dimension; i++) s[from + i] = (short) index[i];
+        levels[page][offset] = (short) level;
+        break;
+      default:
+        System.arraycopy(index, 0, ints[page], from, dimension);
+        intLevels[page][offset] = level;
+    }
+    size += 1;
+    return h;
+  }
+
+  private void grow(int page) {
+    int capacity = pageMask + 1;
+    edges = Arrays.copyOf(edges, page + 1);
+    edges[page] = new int[capacity][];
+    switch (width) {
+      case Byte:
+        bytes = Arrays.copyOf(bytes, page + 1);
+        bytes[page] = new byte[capacity * dimension];
+        break;
+      case Short:
+        shorts = Arrays.copyOf(shorts, page + 1);
+        shorts[page] = new short[capacity * dimension];
+        break;
+      default:
+        ints = Arrays.copyOf(ints, page + 1);
+        ints[page] = new int[capacity * dimension];
+    }
+    if (width == Width.Int) {
+      intLevels = Arrays.copyOf(intLevels, page + 1);
+      intLevels[page] = new int[capacity];
+    } else {
+      levels = Arrays.copyOf(levels, page + 1);
+      levels[page] = new short[capacity];
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Forget all nodes but keep the allocated pages
+   */
+  public void clear() {
+    for (int i = 0; i < edges.length; i++) {
+      Arrays.fill(edges[i], null);
+    }
+    size = 0;
+  }
+
+  /**
+   * Copy the coordinates of node h into the given buffer
+   *
+   * @param h
+   * @param buffer
+   * @return the buffer
+   */
+  public int[] coords(int h, int[] buffer) {
+    int page = h >>> pageBits;
+    int from = (h & pageMask) * dimension;
+    switch (width) {
+      case Byte:
+        byte[] b = bytes[page];
+        for (int i = 0; i < dimension; i++) buffer[i] = b[from + i] & 0xFF;
+        break;
+      case Short:
+        short[] s = shorts[page];
+        for (int i = 0; i < dimension; i++) buffer[i] = s[from + i];
+        break;
+      default:
+        System.arraycopy(ints[page], from, buffer, 0, dimension);
+    }
+    return buffer;
+  }
+
+  public int coord(int h, int i) {
+    int page = h >>> pageBits;
+    int at = (h & pageMask) * dimension + i;
+    switch (width) {
+      case Byte:
+        return bytes[page][at] & 0xFF;
+      case Short:
+        return shorts[page][at];
+      default:
+        return ints[page][at];
+    }
+  }
+
+  /**
+   * Whether the node h locates at the given coordinates
+   */
+  public boolean matches(int h, int[] index) {
+    int page = h >>> pageBits;
+    int from = (h & pageMask) * dimension;
+    switch (width) {
+      case Byte:
+        byte[] b = bytes[page];
+        for (int i = 0; i < dimension; i++) {
+          if ((b[from + i] & 0xFF) != index[i]) return false;
+        }
+        return true;
+      case Short:
+        short[] s = shorts[page];
+        for (int i = 0; i < dimension; i++) {
+          if (s[from + i] != index[i]) return false;
+        }
+        return true;
+      default:
+        int[] n = ints[page];
+        for (int i = 0; i < dimension; i++) {
+          if (n[from + i] != index[i]) return false;
+        }
+        return true;
+    }
+  }
+
+  public int level(int h) {
+    if (width == Width.Int) return intLevels[h >>> pageBits][h & pageMask];
+    return levels[h >>> pageBits][h & pageMask];
+  }
+
+  public void updateLevel(int h, int level) {
+    if (width == Width.Int) intLevels[h >>> pageBits][h & pageMask] = level;
+    else levels[h >>> pageBits][h & pageMask] = (short) level;
+  }
+
+  public int sum(int h) {
+    int sum = 0;
+    for (int i = 0; i < dimension; i++) {
+      sum += coord(h, i);
+    }
+    return sum;
+  }
+
+  /**
+   * Precursor count of node h
+   */
+  public int degree(int h) {
+    int[] e = edges[h >>> pageBits][h & pageMask];
+    return null == e ? 0 : e[0];
+  }
+
+  /**
+   * The i-th precursor of node h
+   */
+  public int prec(int h, int i) {
+    return edges[h >>> pageBits][h & pageMask][i + 1];
+  }
+
+  /**
+   * Precursors of node h
+   */
+  public int[] precs(int h) {
+    int[] e = edges[h >>> pageBits][h & pageMask];
+    return null == e ? new int[0] : Arrays.copyOfRange(e, 1, e[0] + 1);
+  }
+
+  public boolean hasEdge(int h, int prec) {
+    int[] e = edges[h >>> pageBits][h & pageMask];
+    if (null == e) return false;
+    for (int i = 1; i <= e[0]; i++) {
+      if (e[i] == prec) return true;
+    }
+    return false;
+  }
+
+  /**
+   * link precursor to node h
+   *
+   * @param h
+   * @param prec
+   */
+  public void addEdge(int h, int prec) {
+    int[][] page = edges[h >>> pageBits];
+    int[] e = page[h & pageMask];
+    if (null == e) {
+      e = new int[2];
+    } else {
+      int count = e[0];
+      for (int i = 1; i <= count; i++) {
+        if (e[i] == prec) return;
+      }
+      if (count + 1 == e.length) e = Arrays.copyOf(e, e.length * 2);
+    }
+    e[0] += 1;
+    e[e[0]] = prec;
+    page[h & pageMask] = e;
+  }
+
+  /**
+   * link precursor to node h,and drop precursors lower than the level just before h.
+   *
+   * @param h
+   * @param prec
+   */
+  public void setEdge(int h, int prec) {
+    int[] e = edges[h >>> pageBits][h & pageMask];
+    if (null != e) {
+      int minLevel = level(h) - 1;
+      int count = 0;
+      for (int i = 1; i <= e[0]; i++) {
+        if (level(e[i]) >= minLevel) e[++count] = e[i];
+      }
+      e[0] = count;
+    }
+    addEdge(h, prec);
+  }
+
+  /**
+   * Remove the link from node h to prec
+   *
+   * @return true if the link existed
+   */
+  public boolean removeEdge(int h, int prec) {
+    int[] e = edges[h >>> pageBits][h & pageMask];
+    if (null == e) return false;
+    for (int i = 1; i <= e[0]; i++) {
+      if (e[i] == prec) {
+        System.arraycopy(e, i + 1, e, i, e[0] - i);
+        e[0] -= 1;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Remove all links to node h
+   */
+  public void clearEdges(int h) {
+    edges[h >>> pageBits][h & pageMask] = null;
+  }
+
+  public String toString(int h) {
+    StringBuilder sb = new StringBuilder("(");
+    for (int i = 0; i < dimension; i++) {
+      if (i > 0) sb.append(',');
+      sb.append(coord(h, i));
+    }
+    return sb.append(')').toString();
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.util.List;
+
+/**
+ * LCS of the suffixes of every sequence pair.
+ * The MLCS after a location is no longer than the LCS of any two of its suffixes,
+ * so the minimum over all pairs is a tail upbound.
+ * <p>
+ * Along a row the suffix LCS decreases by 0 or 1 each step,so a row is stored as one bit per step
+ * plus the value at the start of every 64 bits,about 1.25 bits a cell.
+ */
+public class PairwiseLcs {
+  private final int[] firsts; // pair -> sequence index
+  private final int[] seconds; // pair -> sequence index
+  private final int[] words; // pair -> words of a row
+  private final long[][] steps; // pair -> row major bits,set if lcs(p,r)-lcs(p,r+1)==1
+  private final short[][] bases; // pair -> lcs at the start of every word
+
+  public PairwiseLcs(List<Sequence> seqs) {
+    for (Sequence seq : seqs) {
+      // the bits of one such pair already take gigabytes
+      if (seq.length() > Short.MAX_VALUE) {
+        throw new IllegalArgumentException("Pairwise bound is limited to sequences shorter than " + Short.MAX_VALUE);
+      }
+    }
+    int n = seqs.size();
+    int pairs = n * (n - 1) / 2;
+    firsts = new int[pairs];
+    seconds = new int[pairs];
+    words = new int[pairs];
+    steps = new long[pairs][];
+    bases = new short[pairs][];
+    int pair = 0;
+    for (int i = 0; i < n; i++) {
+      for (int j = i + 1; j < n; j++) {
+        firsts[pair] = i;
+        seconds[pair] = j;
+        build(pair, seqs.get(i), seqs.get(j));
+        pair += 1;
+      }
+    }
+  }
+
+  /**
+   * Fill the table of a pair from the last row up
+   */
+  private void build(int pair, Sequence a, Sequence b) {
+    int la = a.length() - 1, lb = b.length() - 1; // the last real character
+    int w = (lb + 1 + 63) >>> 6;
+    long[] bits = new long[(la + 1) * w];
+    short[] base = new short[(la + 1) * w];
+    // codes of the same alphabet
+    int[] as = a.codes(), bs = b.codes();
+    int[] prev = new int[lb + 2];
+    int[] cur = new int[lb + 2];
+    for (int p = la; p >= 0; p--) {
+      cur[lb] = 0;
+      if (p < la) {
+        int c = as[p + 1];
+        for (int r = lb - 1; r >= 0; r--) {
+          if (bs[r + 1] == c) cur[r] = prev[r + 1] + 1;
+          else cur[r] = Math.max(prev[r], cur[r + 1]);
+        }
+      } else {
+        for (int r = lb - 1; r >= 0; r--) cur[r] = 0;
+      }
+      int row = p * w;
+      for (int r = 0; r <= lb; r++) {
+        if ((r & 63) == 0) base[row + (r >>> 6)] = (short) cur[r];
+        if (r < lb && cur[r] != cur[r + 1]) bits[row + (r >>> 6)] |= 1L << (r & 63);
+      }
+      int[] t = prev;
+      prev = cur;
+      cur = t;
+    }
+    words[pair] = w;
+    steps[pair] = bits;
+    bases[pair] = base;
+  }
+
+  /**
+   * LCS of the suffixes after position p of the first and position r of the second sequence
+   */
+  public int lcs(int pair, int p, int r) {
+    int idx = p * words[pair] + (r >>> 6);
+    long before = steps[pair][idx] & ((1L << (r & 63)) - 1);
+    return bases[pair][idx] - Long.bitCount(before);
+  }
+
+  /**
+   * The minimum suffix LCS of all pairs,no larger than the given bound
+   */
+  public int upbound(int[] index, int bound) {
+    for (int pair = 0; pair < firsts.length && bound > 0; pair++) {
+      int l = lcs(pair, index[firsts[pair]], index[seconds[pair]]);
+      if (l < bound) bound = l;
+    }
+    return bound;
+  }
+
+  /**
+   * Bytes occupied by the tables
+   */
+  public long memory() {
+    long bytes = 0;
+    for (int pair = 0; pair < firsts.length; pair++) {
+      bytes += steps[pair].length * 8L + bases[pair].length * 2L;
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.math.BigInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Count the paths from the start to every node,layer by layer.
+ * A node sums the counts of its predecessors in lower layers,so the nodes of a layer are counted in parallel.
+ * Counts are longs,a node whose sum overflows keeps a BigInteger instead.
+ */
+public class PathCounter {
+  static final int ChunkSize = 1024;
+  // the count is in the overflowed map
+  private static final long Overflowed = -1;
+
+  private final Graph graph;
+  private final NodeStore store;
+  private final long[] counts; // handle -> paths from the start
+  private final ConcurrentHashMap<Integer, BigInteger> overflowed = new ConcurrentHashMap<>();
+
+  public PathCounter(Graph graph) {
+    this.graph = graph;
+    this.store = graph.store;
+    this.counts = new long[store.size()];
+  }
+
+  /**
+   * Paths from the start to the end
+   *
+   * @param pool count each layer in the pool,null for sequential
+   */
+  public BigInteger count(ForkJoinPool pool) {
+    counts[graph.start] = 1;
+    for (int l = 1; l <= graph.maxLevel + 1; l++) {
+      int[] layer = (l == graph.maxLevel + 1) ? new int[]{graph.end} : graph.getLevel(l);
+      if (null == pool || layer.length <= ChunkSize) {
+        countRange(layer, 0, layer.length);
+      } else {
+        pool.invoke(new Counting(layer, 0, layer.length));
+      }
+    }
+    return valueOf(graph.end);
+  }
+
+  /**
+   * Nodes on a path to the end,excluding the start and end.
+   */
+  public long reachable() {
+    boolean[] marks = new boolean[store.size()];
+    marks[graph.end] = true;
+    long count = 0;
+    for (int l = graph.maxLevel + 1; l > 0; l--) {
+      int[] layer = (l == graph.maxLevel + 1) ? new int[]{graph.end} : graph.getLevel(l);
+      for (int n : layer) {
+        if (!marks[n]) continue;
+        if (n != graph.end) count += 1;
+        for (int i = 0, degree = store.degree(n); i < degree; i++) marks[store.prec(n, i)] = true;
+      }
+    }
+    return count;
+  }
+
+  public BigInteger valueOf(int h) {
+    long c = counts[h];
+    return c == Overflowed ? overflowed.get(h) : BigInteger.valueOf(c);
+  }
+
+  private void countRange(int[] layer, int from, int to) {
+    for (int i = from; i < to; i++) {
+      int n = layer[i];
+      long sum = 0;
+      BigInteger big = null;
+      for (int j = 0, degree = store.degree(n); j < degree; j++) {
+        long c = counts[store.prec(n, j)];
+        if (c == Overflowed) {
+          big = (null == big ? BigInteger.valueOf(sum) : big).add(overflowed.get(store.prec(n, j)));
+        } else if (null != big) {
+          big = big.add(BigInteger.valueOf(c));
+        } else {
+          long s = sum + c;
+          if (s < 0) big = BigInteger.valueOf(sum).add(BigInteger.valueOf(c));
+          else sum = s;
+        }
+      }
+      if (null == big) {
+        counts[n] = sum;
+      } else {
+        overflowed.put(n, big);
+        counts[n] = Overflowed;
+      }
+    }
+  }
+
+  private class Counting extends RecursiveAction {
+    final int[] layer;
+    final int from, to;
+
+    Counting(int[] layer, int from, int to) {
+      this.layer = layer;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= ChunkSize) {
+        countRange(layer, from, to);
+      } else {
+        int mid = (from + to) >>> 1;
+        invokeAll(new Counting(layer, from, mid), new Counting(layer, mid, to));
+      }
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazy depth first walk of the paths from the end node back to layer 1.
+ * The walk keeps a node and a predecessor cursor per depth in primitive arrays,
+ * so the memory is bounded by the mlcs length whatever the path count.
+ * Each path is returned as handles from layer 1 on.
+ * It walks any LayeredGraph,a graph in memory or a mapped result file.
+ */
+public class PathIterator implements Iterator<int[]> {
+  private final LayeredGraph graph;
+  private int[] nodes; // depth -> node,nodes[0] is the end
+  private int[] cursors; // depth -> next predecessor to visit
+  private int depth;
+  private int[] next;
+  // paths from every node down to layer 1,saturated at Long.MAX_VALUE,built on the first skip
+  private long[] counts;
+
+  public PathIterator(LayeredGraph graph) {
+    this.graph = graph;
+    int capacity = graph.maxLevel() + 2;
+    nodes = new int[capacity];
+    cursors = new int[capacity];
+    nodes[0] = graph.end();
+    depth = 1;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (null == next) next = advance();
+    return null != next;
+  }
+
+  @Override
+  public int[] next() {
+    if (!hasNext()) throw new NoSuchElementException();
+    int[] path = next;
+    next = null;
+    return path;
+  }
+
+  /**
+   * Skip n paths without visiting them,subtrees with fewer paths than the remaining are jumped over.
+   *
+   * @return the count of skipped paths,less than n when the paths run out
+   */
+  public long skip(long n) {
+    long skipped = 0;
+    if (null != next && n > 0) {
+      next = null;
+      skipped = 1;
+    }
+    if (n > skipped) {
+      if (null == counts) counts = countPaths();
+      long rest = n - skipped;
+      long left = rest;
+      while (left > 0 && depth > 0) {
+        int top = nodes[depth - 1];
+        if (cursors[depth - 1] == graph.degree(top)) {
+          depth -= 1;
+          continue;
+        }
+        int p = graph.prec(top, cursors[depth - 1]);
+        long count = graph.level(p) < 1 ? 0 : counts[p];
+        if (count <= left) {
+          left -= count;
+          cursors[depth - 1] += 1;
+        } else {
+          push(p);
+        }
+      }
+      skipped += rest - left;
+    }
+    return skipped;
+  }
+
+  /**
+   * Walk to the next complete path
+   */
+  private int[] advance() {
+    while (depth > 0) {
+      int top = nodes[depth - 1];
+      if (cursors[depth - 1] == graph.degree(top)) {
+        depth -= 1;
+        continue;
+      }
+      int p = graph.prec(top, cursors[depth - 1]);
+      int level = graph.level(p);
+      if (level < 1) {
+        cursors[depth - 1] += 1;
+      } else if (level == 1) {
+        cursors[depth - 1] += 1;
+        int[] path = new int[depth];
+        path[0] = p;
+        for (int i = 1; i < depth; i++) path[i] = nodes[depth - i];
+        return path;
+      } else {
+        push(p);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Descend into p,the cursor of the parent moves past p
+   */
+  private void push(int p) {
+    cursors[depth - 1] += 1;
+    if (depth == nodes.length) {
+      nodes = Arrays.copyOf(nodes, depth * 2);
+      cursors = Arrays.copyOf(cursors, depth * 2);
+    }
+    nodes[depth] = p;
+    cursors[depth] = 0;
+    depth += 1;
+  }
+
+  private long[] countPaths() {
+    long[] counts = new long[graph.nodeLimit()];
+    for (int l = 1; l <= graph.maxLevel(); l++) {
+      for (int n : graph.getLevel(l)) {
+        if (l == 1) {
+          counts[n] = 1;
+          continue;
+        }
+        long c = 0;
+        for (int i = 0, degree = graph.degree(n); i < degree; i++) {
+          int p = graph.prec(n, i);
+          if (graph.level(p) >= 1) {
+            c += counts[p];
+            if (c < 0) c = Long.MAX_VALUE;
+          }
+        }
+        counts[n] = c;
+      }
+    }
+    return counts;
+  }
+}
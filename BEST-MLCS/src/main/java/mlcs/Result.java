@@ -24,9 +24,8 @@ import mlcs.util.Stopwatch;
 import java.awt.*;
 import java.io.*;
 import java.math.BigDecimal;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 
 /**
@@ -42,10 +41,17 @@ public class Result {
   public final long endAt;// the algorithm finish time
   public final long totalCreateCount; // total create node count in this process
   public final long highestCapacity; // highest node count in this process
+  public final int upperBound; // proven upper bound of the mlcs length,larger than maxLevel for partial results
 
   public Result(Graph graph, BigDecimal count, long nodeCount, int maxLevel, long totalCreateCount,
                 long highestCapacity, long startAt, long endAt) {
+    this(graph, count, nodeCount, maxLevel, totalCreateCount, highestCapacity, startAt, endAt, maxLevel);
+  }
+
+  public Result(Graph graph, BigDecimal count, long nodeCount, int maxLevel, long totalCreateCount,
+                long highestCapacity, long startAt, long endAt, int upperBound) {
     this.graph = graph;
+    this.upperBound = upperBound;
     this.mlcsCount = count;
     this.maxLevel = maxLevel;
     this.nodeCount = nodeCount;
@@ -55,6 +61,27 @@ public class Result {
     this.highestCapacity = highestCapacity;
   }
 
+  /**
+   * A result holding only the given common subsequence,its count is unknown.
+   *
+   * @param upperBound proven upper bound of the mlcs length
+   */
+  public static Result of(Mlcs mlcs, String subsequence, int upperBound, long startAt) {
+    int length = subsequence.length();
+    int[][] path = mlcs.embed(subsequence);
+    Graph graph = new Graph(mlcs);
+    graph.maxLevel = length;
+    int prev = graph.start;
+    for (int i = 0; i < length; i++) {
+      int h = graph.add(path[i], i + 1);
+      graph.store.addEdge(h, prev);
+      prev = h;
+    }
+    graph.store.addEdge(graph.addEnd(length + 1), prev);
+    return new Result(graph, null, length, length, length, length, startAt, System.currentTimeMillis(),
+      upperBound);
+  }
+
   public String getTime() {
     return Stopwatch.format(endAt - startAt);
   }
@@ -65,10 +92,11 @@ public class Result {
     fw.append("sequences:\n");
     for (Sequence seq : mlcs.seqs) {
       fw.append("  ");
-      fw.append(new String(Arrays.copyOfRange(seq.chars, 1, seq.chars.length - 1)));
+      fw.append(seq.toString());
       fw.append('\n');
     }
     fw.append("maxLevel: ").append(String.valueOf(maxLevel)).append('\n');
+    if (upperBound > maxLevel) fw.append("upperBound: ").append(String.valueOf(upperBound)).append('\n');
     if (null == mlcsCount) {
       fw.append("mlcsCount: ").append("????").append('\n');
     } else {
@@ -80,7 +108,7 @@ public class Result {
     fw.append("time: ").append(getTime()).append('\n');
     fw.append("startAt: ").append(String.valueOf(startAt)).append('\n');
     fw.append("endAt: ").append(String.valueOf(endAt)).append('\n');
-    List<List<Node>> paths = null;
+    List<int[]> paths = null;
     if (null != mlcsCount) {
       if (mlcsCount.compareTo(new BigDecimal(100)) <= 0) {
         fw.append("mlcs:\n");
@@ -89,21 +117,20 @@ public class Result {
         fw.append("mlcs(top100):\n");
         paths = graph.paths(100);
       }
-      for (List<Node> path : paths) {
+      for (int[] path : paths) {
         fw.append("  ");
-        for (Node loc : path) {
-          fw.append(mlcs.charAt(loc));
+        for (int loc : path) {
+          fw.append(graph.charAt(loc));
         }
         fw.append('\n');
       }
     }
     fw.append("nodes:\n");
     for (int i = 1; i <= maxLevel; i++) {
-      HashMap<Node, Node> levelNodes = graph.getLevel(i);
       fw.append(" ");
-      for (Node loc : levelNodes.keySet()) {
+      for (int loc : graph.getLevel(i)) {
         fw.append(' ');
-        fw.append(loc.toString());
+        fw.append(graph.store.toString(loc));
       }
       fw.append('\n');
     }
@@ -113,11 +140,16 @@ public class Result {
   /**
    * Dump the result into a file
    * It contains the original sequences and many statistics in the result.
+   * A file name ending with .mlcs is written in the binary format.
    *
    * @param fileName
    */
   public void dumpTo(String fileName) {
     try {
+      if (fileName.endsWith(ResultFile.Extension)) {
+        ResultFile.write(this, Path.of(fileName));
+        return;
+      }
       File f = new File(fileName);
       f.getParentFile().mkdirs();
       FileWriter fw = new FileWriter(fileName);
@@ -142,12 +174,20 @@ public class Result {
 
   /**
    * Parse a given dump file, and restore the result.
+   * Binary files are mapped and loaded with their edges.
    *
    * @param fileName
    * @return
    */
   public static Result parse(String fileName) {
+    try {
+      Path path = Path.of(fileName);
+      if (ResultFile.isBinary(path)) return ResultFile.open(path).load();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
     int maxLevel = 0;
+    int upperBound = -1;
     BigDecimal mlcsCount = null;
     int nodeCount = 0;
     long totalCreateCount = 0;
@@ -162,8 +202,11 @@ public class Result {
       while (null != line) {
         if (line.startsWith("maxLevel")) {
           maxLevel = Integer.parseInt(contentOf(line));
+        } else if (line.startsWith("upperBound")) {
+          upperBound = Integer.parseInt(contentOf(line));
         } else if (line.startsWith("mlcsCount")) {
-          mlcsCount = new BigDecimal(contentOf(line).toCharArray());
+          String count = contentOf(line);
+          mlcsCount = count.equals("????") ? null : new BigDecimal(count.toCharArray());
         } else if (line.startsWith("nodeCount")) {
           nodeCount = Integer.parseInt(contentOf(line));
         } else if (line.startsWith("totalCreateCount")) {
@@ -184,39 +227,38 @@ public class Result {
           mlcs = Mlcs.build(datas.toArray(new String[datas.size()]));
           continue;
         } else if (line.startsWith("nodes")) {
-          short level = 1;
+          int level = 1;
           line = reader.readLine();
           graph = new Graph(mlcs);
           graph.maxLevel = maxLevel;
-          graph.end = mlcs.end;
-          graph.add((short) 0, mlcs.start);
-          graph.add((short) (maxLevel + 1), mlcs.end);
+          graph.addEnd(maxLevel + 1);
 
           while (line != null && line.charAt(0) == ' ') {
-            HashMap<Node, Node> nodes = new HashMap<>();
             line = line.trim();
             String[] nodeStrs = line.split(" ");
             for (String nodestr : nodeStrs) {
               String[] locstr = nodestr.substring(1, nodestr.length() - 1).split(",");
-              short[] index = new short[locstr.length];
+              int[] index = new int[locstr.length];
               for (int i = 0; i < index.length; i++) {
-                index[i] = Short.parseShort(locstr[i]);
+                index[i] = Integer.parseInt(locstr[i]);
               }
-              Node node = new Node(index);
-              node.level = level;
-              nodes.put(node, node);
+              graph.add(index, level);
             }
-            graph.addLevel(level, nodes);
             level += 1;
             line = reader.readLine();
           }
           graph.link();
+          // a partial result ends before the last layer runs out of successors
+          if (graph.store.degree(graph.end) == 0) {
+            for (int n : graph.getLevel(maxLevel)) graph.store.addEdge(graph.end, n);
+          }
           continue;
         }
         line = reader.readLine();
       }
       reader.close();
-      return new Result(graph, mlcsCount, nodeCount, maxLevel, totalCreateCount, highestCapacity, startAt, endAt);
+      return new Result(graph, mlcsCount, nodeCount, maxLevel, totalCreateCount, highestCapacity, startAt, endAt,
+        Math.max(maxLevel, upperBound));
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
@@ -233,9 +275,26 @@ public class Result {
    */
   public static void main(String[] args) {
     if (args.length < 1) {
-      System.out.println("Usage: Result /path/to/result/file");
+      System.out.println("Usage: Result /path/to/result/file [skip limit]");
       return;
     }
-    Result.parse(args[0]).visualize();
+    if (args.length > 2) {
+      graphOf(args[0]).mlcs(Long.parseLong(args[1]), Long.parseLong(args[2])).forEach(System.out::println);
+    } else {
+      Result.parse(args[0]).visualize();
+    }
+  }
+
+  /**
+   * The graph of a result for walking its paths,binary files are walked in place without loading
+   */
+  public static LayeredGraph graphOf(String fileName) {
+    try {
+      Path path = Path.of(fileName);
+      if (ResultFile.isBinary(path)) return ResultFile.open(path);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return parse(fileName).graph;
   }
 }
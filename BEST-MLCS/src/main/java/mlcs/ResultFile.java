@@ -0,0 +1,402 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Binary result file,opened through memory mapped segments without parsing or relinking.
+ * <p>
+ * Layout(big endian):
+ * <pre>
+ * magic "MLCS",version
+ * maxLevel,upperBound,nodeCount,totalCreateCount,highestCapacity,startAt,endAt
+ * mlcsCount as ascii(length -1 if unknown)
+ * sequence count,then length and chars of every sequence
+ * coordinate width in bytes(1,2 or 4)
+ * layer count(maxLevel+2),node offset of every layer and the total node count
+ * coordinates of all nodes in that width,layer by layer(start first and end last)
+ * edge offset of every node and the total edge count(long)
+ * predecessor node of every edge(int)
+ * </pre>
+ * Paths and mlcs strings stream straight from the mapped edges,only load() rebuilds the graph in memory.
+ */
+public class ResultFile implements LayeredGraph {
+  public static final int Magic = 0x4D4C4353;
+  public static final int Version = 2;
+  public static final String Extension = ".mlcs";
+  static final long SegmentBytes = 1L << 30;
+
+  public final Path path;
+  public final int maxLevel;
+  public final int upperBound;
+  public final BigDecimal mlcsCount;
+  public final long nodeCount, totalCreateCount, highestCapacity, startAt, endAt;
+  public final String[] sequences;
+  public final int dimension;
+  public final Width width;
+  private final int[] layerOffsets; // layer -> first node,the last one is the total node count
+  private final long coordsAt, edgeOffsetsAt, edgesAt;
+  private final MappedByteBuffer[] segments;
+
+  private ResultFile(Path path) throws IOException {
+    this.path = path;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      // segments overlap by 8 bytes,so no value crosses a segment boundary
+      segments = new MappedByteBuffer[(int) ((size + SegmentBytes - 1) / SegmentBytes)];
+      for (int i = 0; i < segments.length; i++) {
+        long from = i * SegmentBytes;
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(size - from, SegmentBytes + 8));
+      }
+    }
+    long p = 0;
+    if (getInt(p) != Magic) throw new IOException(path + " is not a binary mlcs result");
+    int version = getInt(p + 4);
+    if (version != Version) throw new IOException("Unsupported result version " + version);
+    p += 8;
+    maxLevel = getInt(p);
+    upperBound = getInt(p + 4);
+    nodeCount = getLong(p + 8);
+    totalCreateCount = getLong(p + 16);
+    highestCapacity = getLong(p + 24);
+    startAt = getLong(p + 32);
+    endAt = getLong(p + 40);
+    p += 48;
+    int countLength = getInt(p);
+    p += 4;
+    if (countLength < 0) {
+      mlcsCount = null;
+    } else {
+      byte[] digits = new byte[countLength];
+      for (int i = 0; i < countLength; i++) digits[i] = get(p + i);
+      mlcsCount = new BigDecimal(new String(digits, StandardCharsets.US_ASCII));
+      p += countLength;
+    }
+    sequences = new String[getInt(p)];
+    p += 4;
+    for (int i = 0; i < sequences.length; i++) {
+      char[] chars = new char[getInt(p)];
+      p += 4;
+      for (int j = 0; j < chars.length; j++, p += 2) chars[j] = (char) getShort(p);
+      sequences[i] = new String(chars);
+    }
+    dimension = sequences.length;
+    width = Width.of(get(p));
+    p += 1;
+    layerOffsets = new int[getInt(p) + 1];
+    p += 4;
+    for (int i = 0; i < layerOffsets.length; i++, p += 4) layerOffsets[i] = getInt(p);
+    coordsAt = p;
+    edgeOffsetsAt = coordsAt + (long) size() * dimension * width.bytes;
+    edgesAt = edgeOffsetsAt + (size() + 1L) * 8;
+  }
+
+  /**
+   * Map a binary result file
+   */
+  public static ResultFile open(Path path) throws IOException {
+    return new ResultFile(path);
+  }
+
+  /**
+   * Whether the file starts with the magic of binary results
+   */
+  public static boolean isBinary(Path path) throws IOException {
+    try (InputStream is = Files.newInputStream(path)) {
+      byte[] head = is.readNBytes(4);
+      return head.length == 4 && ByteBuffer.wrap(head).getInt() == Magic;
+    }
+  }
+
+  /**
+   * Total node count,including the start and end node
+   */
+  public int size() {
+    return layerOffsets[layerOffsets.length - 1];
+  }
+
+  public int layerCount() {
+    return layerOffsets.length - 1;
+  }
+
+  /**
+   * The first node of layer l,nodes of a layer are consecutive
+   */
+  public int layerStart(int l) {
+    return layerOffsets[l];
+  }
+
+  public int layerSize(int l) {
+    return layerOffsets[l + 1] - layerOffsets[l];
+  }
+
+  public int coord(int node, int j) {
+    return getCoord(coordsAt + ((long) node * dimension + j) * width.bytes);
+  }
+
+  public int[] coords(int node, int[] buffer) {
+    long p = coordsAt + (long) node * dimension * width.bytes;
+    for (int j = 0; j < dimension; j++, p += width.bytes) buffer[j] = getCoord(p);
+    return buffer;
+  }
+
+  @Override
+  public int maxLevel() {
+    return maxLevel;
+  }
+
+  @Override
+  public int end() {
+    return size() - 1;
+  }
+
+  @Override
+  public int nodeLimit() {
+    return size();
+  }
+
+  /**
+   * The layer holding the node,found by a binary search over the layer offsets
+   */
+  @Override
+  public int level(int node) {
+    int low = 0, high = layerOffsets.length - 2;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (layerOffsets[mid] <= node) low = mid;
+      else high = mid - 1;
+    }
+    return low;
+  }
+
+  @Override
+  public int[] getLevel(int l) {
+    int[] nodes = new int[layerSize(l)];
+    for (int i = 0; i < nodes.length; i++) nodes[i] = layerOffsets[l] + i;
+    return nodes;
+  }
+
+  @Override
+  public char charAt(int node) {
+    int index = coord(node, 0);
+    String seq = sequences[0];
+    return (index < 1 || index > seq.length()) ? '.' : seq.charAt(index - 1);
+  }
+
+  @Override
+  public int degree(int node) {
+    return (int) (edgeOffset(node + 1) - edgeOffset(node));
+  }
+
+  /**
+   * The i-th predecessor of the node
+   */
+  @Override
+  public int prec(int node, int i) {
+    return getInt(edgesAt + (edgeOffset(node) + i) * 4);
+  }
+
+  private long edgeOffset(int node) {
+    return getLong(edgeOffsetsAt + node * 8L);
+  }
+
+  /**
+   * Restore the result with its graph,edges are read from the file instead of being relinked.
+   * It copies every node and edge into the heap,walking paths only needs the file itself.
+   */
+  public Result load() {
+    Mlcs mlcs = Mlcs.build(sequences);
+    Graph graph = new Graph(mlcs);
+    graph.maxLevel = maxLevel;
+    int[] handles = new int[size()];
+    int[] id = new int[dimension];
+    handles[0] = graph.start;
+    for (int l = 1; l <= maxLevel; l++) {
+      for (int n = layerStart(l), end = layerStart(l + 1); n < end; n++) {
+        handles[n] = graph.add(coords(n, id), l);
+      }
+    }
+    handles[size() - 1] = graph.addEnd(maxLevel + 1);
+    for (int n = 0; n < handles.length; n++) {
+      for (int i = 0, degree = degree(n); i < degree; i++) graph.store.addEdge(handles[n], handles[prec(n, i)]);
+    }
+    return new Result(graph, mlcsCount, nodeCount, maxLevel, totalCreateCount, highestCapacity, startAt, endAt,
+      upperBound);
+  }
+
+  /**
+   * Write the result and its graph in the binary format
+   */
+  public static void write(Result result, Path path) throws IOException {
+    Graph graph = result.graph;
+    NodeStore store = graph.store;
+    int layerCount = result.maxLevel + 2;
+    int[] layerOffsets = new int[layerCount + 1];
+    int[] ordinals = new int[store.size()]; // handle -> node,-1 for the dropped
+    Arrays.fill(ordinals, -1);
+    int total = 0;
+    for (int l = 0; l < layerCount; l++) {
+      layerOffsets[l] = total;
+      for (int h : levelOf(graph, l)) ordinals[h] = total++;
+    }
+    layerOffsets[layerCount] = total;
+
+    Files.createDirectories(path.toAbsolutePath().getParent());
+    try (var out = new Output(path)) {
+      out.putInt(Magic).putInt(Version);
+      out.putInt(result.maxLevel).putInt(result.upperBound);
+      out.putLong(result.nodeCount).putLong(result.totalCreateCount).putLong(result.highestCapacity);
+      out.putLong(result.startAt).putLong(result.endAt);
+      if (null == result.mlcsCount) {
+        out.putInt(-1);
+      } else {
+        byte[] digits = result.mlcsCount.toPlainString().getBytes(StandardCharsets.US_ASCII);
+        out.putInt(digits.length);
+        for (byte b : digits) out.put(b);
+      }
+      out.putInt(graph.mlcs.seqs.size());
+      for (Sequence seq : graph.mlcs.seqs) {
+        out.putInt(seq.length() - 1);
+        for (int j = 1; j < seq.length(); j++) out.putShort((short) seq.charAt(j));
+      }
+      Width width = store.width;
+      out.put((byte) width.bytes);
+      out.putInt(layerCount);
+      for (int offset : layerOffsets) out.putInt(offset);
+      for (int l = 0; l < layerCount; l++) {
+        for (int h : levelOf(graph, l)) {
+          for (int j = 0; j < store.dimension; j++) out.putCoord(width, store.coord(h, j));
+        }
+      }
+      long edges = 0;
+      out.putLong(0);
+      for (int l = 0; l < layerCount; l++) {
+        for (int h : levelOf(graph, l)) {
+          for (int i = 0, degree = store.degree(h); i < degree; i++) {
+            if (ordinals[store.prec(h, i)] >= 0) edges += 1;
+          }
+          out.putLong(edges);
+        }
+      }
+      for (int l = 0; l < layerCount; l++) {
+        for (int h : levelOf(graph, l)) {
+          for (int i = 0, degree = store.degree(h); i < degree; i++) {
+            int prec = ordinals[store.prec(h, i)];
+            if (prec >= 0) out.putInt(prec);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Layer l of the graph,the end node alone is the last layer
+   */
+  private static int[] levelOf(Graph graph, int l) {
+    if (l == graph.maxLevel + 1) return new int[]{graph.end};
+    return graph.getLevel(l);
+  }
+
+  private byte get(long p) {
+    return segments[(int) (p / SegmentBytes)].get((int) (p % SegmentBytes));
+  }
+
+  private short getShort(long p) {
+    return segments[(int) (p / SegmentBytes)].getShort((int) (p % SegmentBytes));
+  }
+
+  private int getCoord(long p) {
+    return width.get(segments[(int) (p / SegmentBytes)], (int) (p % SegmentBytes));
+  }
+
+  private int getInt(long p) {
+    return segments[(int) (p / SegmentBytes)].getInt((int) (p % SegmentBytes));
+  }
+
+  private long getLong(long p) {
+    return segments[(int) (p / SegmentBytes)].getLong((int) (p % SegmentBytes));
+  }
+
+  /**
+   * Buffered channel output
+   */
+  private static class Output implements Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+
+    Output(Path path) throws IOException {
+      this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    Output put(byte b) throws IOException {
+      if (buffer.remaining() < 1) flush();
+      buffer.put(b);
+      return this;
+    }
+
+    Output putShort(short s) throws IOException {
+      if (buffer.remaining() < 2) flush();
+      buffer.putShort(s);
+      return this;
+    }
+
+    Output putCoord(Width width, int c) throws IOException {
+      if (buffer.remaining() < width.bytes) flush();
+      width.put(buffer, c);
+      return this;
+    }
+
+    Output putInt(int i) throws IOException {
+      if (buffer.remaining() < 4) flush();
+      buffer.putInt(i);
+      return this;
+    }
+
+    Output putLong(long l) throws IOException {
+      if (buffer.remaining() < 8) flush();
+      buffer.putLong(l);
+      return this;
+    }
+
+    private void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) channel.write(buffer);
+      buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+      channel.close();
+    }
+  }
+}
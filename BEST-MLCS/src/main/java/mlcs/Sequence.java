@@ -24,15 +24,97 @@ import java.util.Set;
 
 /**
  * Sequence is char sequence.
+ * Characters are stored as dense codes of an alphabet,two bits a character when the alphabet has at most
+ * four symbols(DNA),a byte when it has at most 256 and a char otherwise.
+ * Positions 1..size are the characters,a dummy dot stands at 0 and size+1.
  * For convenience,it provides charAt,buildSuccessors methods
  */
 public class Sequence {
+  final Alphabet alphabet;
+  // count of the characters
+  final int size;
+  // codes of positions 1..size,only one of them is used
+  private final long[] packed;
+  private final byte[] bytes;
+  private final char[] wide;
+  // tables of all characters,built on first use or taken from a cache
+  SequenceTables tables;
 
-  char[] chars;
-
+  /**
+   * @param chars the characters with a dummy dot at both ends
+   */
   public Sequence(char[] chars) {
-    super();
-    this.chars = chars;
+    this(new String(chars, 1, chars.length - 2), null);
+  }
+
+  /**
+   * @param alphabet containing all characters of str,null for the characters of str
+   */
+  Sequence(String str, Alphabet alphabet) {
+    this.alphabet = null == alphabet ? Alphabet.of(str) : alphabet;
+    this.size = str.length();
+    if (this.alphabet.packable()) {
+      packed = new long[(size + 31) >>> 5];
+      for (int i = 0; i < size; i++) packed[i >>> 5] |= (long) code(str.charAt(i)) << ((i & 31) << 1);
+      bytes = null;
+      wide = null;
+    } else if (this.alphabet.size() <= 256) {
+      bytes = new byte[size];
+      for (int i = 0; i < size; i++) bytes[i] = (byte) code(str.charAt(i));
+      packed = null;
+      wide = null;
+    } else {
+      wide = new char[size];
+      for (int i = 0; i < size; i++) wide[i] = (char) code(str.charAt(i));
+      packed = null;
+      bytes = null;
+    }
+  }
+
+  private int code(char c) {
+    int code = alphabet.code(c);
+    if (code < 0) throw new IllegalArgumentException("Character " + c + " is not in the alphabet " + alphabet);
+    return code;
+  }
+
+  /**
+   * Code of the character at the position 1..size
+   */
+  public int code(int index) {
+    int i = index - 1;
+    if (null != packed) return (int) (packed[i >>> 5] >>> ((i & 31) << 1)) & 3;
+    else if (null != bytes) return bytes[i] & 0xFF;
+    else return wide[i];
+  }
+
+  /**
+   * Codes of all positions,the dummy positions are -1
+   */
+  public int[] codes() {
+    int[] codes = new int[size + 2];
+    codes[0] = -1;
+    codes[size + 1] = -1;
+    for (int p = 1; p <= size; p++) codes[p] = code(p);
+    return codes;
+  }
+
+  /**
+   * The same characters encoded in another alphabet
+   */
+  public Sequence encode(Alphabet other) {
+    if (other.equals(alphabet)) return this;
+    Sequence s = new Sequence(toString(), other);
+    s.tables = tables;
+    return s;
+  }
+
+  /**
+   * Count of each code
+   */
+  public int[] codeCounts() {
+    int[] counts = new int[alphabet.size()];
+    for (int p = 1; p <= size; p++) counts[code(p)] += 1;
+    return counts;
   }
 
   /**
@@ -40,16 +122,10 @@ public class Sequence {
    * @return
    */
   public Map<Character, Integer> charCounts() {
+    int[] counts = codeCounts();
     Map<Character, Integer> stats = new HashMap<>();
-    int i = 1;
-    while (i < chars.length - 1) {
-      Integer c = stats.get(chars[i]);
-      if (null == c) {
-        stats.put(chars[i], 1);
-      } else {
-        stats.put(chars[i], c.intValue() + 1);
-      }
-      i++;
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] > 0) stats.put(alphabet.symbol(i), counts[i]);
     }
     return stats;
   }
@@ -59,13 +135,7 @@ public class Sequence {
    * @return
    */
   public Set<Character> charsets() {
-    Set<Character> cs = new java.util.HashSet<Character>();
-    int i = 1;
-    while (i < chars.length - 1) {
-      cs.add(chars[i]);
-      i += 1;
-    }
-    return cs;
+    return charCounts().keySet();
   }
 
   /**
@@ -74,11 +144,43 @@ public class Sequence {
    * @return
    */
   public char charAt(int index) {
-    return chars[index];
+    return (index < 1 || index > size) ? '.' : alphabet.symbol(code(index));
+  }
+
+  /**
+   * The characters with a dummy dot at both ends
+   */
+  public char[] chars() {
+    char[] chars = new char[size + 2];
+    for (int p = 0; p < chars.length; p++) chars[p] = charAt(p);
+    return chars;
+  }
+
+  /**
+   * Successor,predecessor and distance tables of all characters
+   */
+  public SequenceTables tables() {
+    if (null == tables) tables = SequenceTables.build(this);
+    return tables;
+  }
+
+  /**
+   * Tables of the given form,built again when the current ones are of the other form
+   */
+  public SequenceTables tables(boolean sparse) {
+    if (null == tables || tables.sparse() != sparse) tables = SequenceTables.build(this, sparse);
+    return tables;
   }
 
   public int length() {
-    return chars.length - 1;
+    return size + 1;
+  }
+
+  @Override
+  public String toString() {
+    char[] chars = new char[size];
+    for (int p = 1; p <= size; p++) chars[p - 1] = charAt(p);
+    return new String(chars);
   }
 
   /**
@@ -88,56 +190,32 @@ public class Sequence {
    * @return
    */
   public static Sequence build(String str) {
-    if (str.length() >= Short.MAX_VALUE - 2) {
-      throw new RuntimeException("Cannot process string longer than " + (Short.MAX_VALUE - 2));
-    }
-    String s = str.replaceAll(" ", "").trim();
-    char[] c = new char[s.length() + 2];
-    c[0] = '.';
-    c[s.length() + 1] = '.';
-    s.getChars(0, s.length(), c, 1);
-    return new Sequence(c);
+    return new Sequence(clean(str), null);
+  }
+
+  /**
+   * Build a sequence of the alphabet,which contains all characters of the cleaned string
+   */
+  public static Sequence build(String str, Alphabet alphabet) {
+    return new Sequence(clean(str), alphabet);
+  }
+
+  static String clean(String str) {
+    return str.replaceAll(" ", "").trim();
   }
 
   /**
    * Find the successors of the current point with respect to a character
    */
-  public short[] buildSuccessors(char c) {
-    int length = chars.length;
-    short[] successors = new short[length];
-    int i = 0;
-    int j = i + 1;
-    while (i < length) {
-      if (j == i) j += 1;
-      while (j < length && chars[j] != c) {
-        j += 1;
-      }
-      if (j >= length - 1) successors[i] = -1;
-      else successors[i] = (short) j;
-      i += 1;
-    }
-    return successors;
+  public int[] buildSuccessors(char c) {
+    return tables().intSuccessors(c).clone();
   }
 
   /**
    * Find the predecessors of the current point with respect to a character
    */
-  public short[] buildPredecessors(char c) {
-    int length = chars.length;
-    short[] predecessors = new short[length];
-    int i = length - 1;
-    int j = i - 1;
-    while (i > 0) {
-      if (j == i) j -= 1;
-      while (j >= 0 && chars[j] != c) {
-        j -= 1;
-      }
-      if (j < 0) predecessors[i] = 0;
-      else predecessors[i] = (short) j;
-      i -= 1;
-    }
-    predecessors[0] = -1;
-    return predecessors;
+  public int[] buildPredecessors(char c) {
+    return tables().intPredecessors(c).clone();
   }
 
   /**
@@ -145,14 +223,7 @@ public class Sequence {
    * @param c
    * @return
    */
-  public short[] buildDistance(char c) {
-    int length = chars.length;
-    short[] distances = new short[length];
-    short cnt = 0;
-    for (short i = (short) (length - 1); i >= 0; i--) {
-      distances[i] = cnt;
-      if (chars[i] == c) cnt += 1;
-    }
-    return distances;
+  public int[] buildDistance(char c) {
+    return tables().intDistances(c).clone();
   }
 }
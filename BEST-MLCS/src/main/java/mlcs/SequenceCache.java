@@ -0,0 +1,181 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sequence tables keyed by a sha-256 of the sequence,so a sequence shared by many problems is scanned once.
+ * Tables are built,read and written outside any lock,concurrent requests of the same key wait for the first one.
+ * Tables are kept in least recently used order under a memory budget,
+ * and optionally persisted as one file per sequence in a directory.
+ * The shared cache is opt-in,a caller installs one with its own budget,otherwise every problem builds its tables.
+ */
+public class SequenceCache {
+  private static SequenceCache shared;
+
+  private final long budget;
+  private final Path directory;
+  private final ConcurrentHashMap<String, CompletableFuture<SequenceTables>> tables = new ConcurrentHashMap<>();
+  // loaded keys in access order with their table bytes,guarded by itself
+  private final LinkedHashMap<String, Long> recent = new LinkedHashMap<>(16, 0.75f, true);
+  private long memory;
+
+  private final AtomicLong hits = new AtomicLong(), loads = new AtomicLong(), builds = new AtomicLong();
+
+  /**
+   * @param budget    bytes of tables kept in memory
+   * @param directory where the tables are persisted,null for memory only
+   */
+  public SequenceCache(long budget, Path directory) {
+    this.budget = budget;
+    this.directory = directory;
+  }
+
+  /**
+   * The cache consulted by Mlcs.build,null if none was installed
+   */
+  public static SequenceCache shared() {
+    return shared;
+  }
+
+  public static void setShared(SequenceCache cache) {
+    shared = cache;
+  }
+
+  public SequenceTables get(Sequence seq) {
+    return get(seq, false);
+  }
+
+  /**
+   * @param sparse tables of occurrence lists,cached apart from the dense ones
+   */
+  public SequenceTables get(Sequence seq, boolean sparse) {
+    String key = key(seq.chars()) + (sparse ? "-sparse" : "");
+    var loading = new CompletableFuture<SequenceTables>();
+    var existing = tables.putIfAbsent(key, loading);
+    if (null != existing) {
+      hits.incrementAndGet();
+      SequenceTables t = MlcsCache.await(existing);
+      synchronized (recent) {
+        recent.get(key);
+      }
+      return t;
+    }
+    SequenceTables t;
+    try {
+      t = load(seq, key, sparse);
+    } catch (RuntimeException | Error e) {
+      tables.remove(key, loading);
+      loading.completeExceptionally(e);
+      throw e;
+    }
+    loading.complete(t);
+    admit(key, t.memory());
+    return t;
+  }
+
+  /**
+   * Read the tables from the directory,or build them and write them there
+   */
+  private SequenceTables load(Sequence seq, String key, boolean sparse) {
+    Path file = null == directory ? null : directory.resolve(key + ".seq");
+    try {
+      SequenceTables t = null;
+      if (null != file && Files.exists(file)) t = SequenceTables.read(file, seq);
+      if (null == t || t.sparse() != sparse) {
+        t = SequenceTables.build(seq, sparse);
+        builds.incrementAndGet();
+        if (null != file) {
+          Files.createDirectories(directory);
+          t.write(file, seq);
+        }
+      } else {
+        loads.incrementAndGet();
+      }
+      return t;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Account the loaded tables and evict the least recently used ones over the budget
+   */
+  private void admit(String key, long bytes) {
+    synchronized (recent) {
+      recent.put(key, bytes);
+      memory += bytes;
+      Iterator<Map.Entry<String, Long>> iter = recent.entrySet().iterator();
+      while (memory > budget && recent.size() > 1) {
+        var eldest = iter.next();
+        memory -= eldest.getValue();
+        tables.remove(eldest.getKey());
+        iter.remove();
+      }
+    }
+  }
+
+  public int size() {
+    synchronized (recent) {
+      return recent.size();
+    }
+  }
+
+  public long hits() {
+    return hits.get();
+  }
+
+  public long loads() {
+    return loads.get();
+  }
+
+  public long builds() {
+    return builds.get();
+  }
+
+  static String key(char[] chars) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    byte[] bytes = new byte[chars.length * 2];
+    for (int i = 0; i < chars.length; i++) {
+      bytes[2 * i] = (byte) (chars[i] >>> 8);
+      bytes[2 * i + 1] = (byte) chars[i];
+    }
+    digest.update(bytes);
+    StringBuilder sb = new StringBuilder(64);
+    for (byte b : digest.digest()) sb.append(String.format("%02x", b));
+    return sb.toString();
+  }
+}
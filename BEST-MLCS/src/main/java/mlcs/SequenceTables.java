@@ -0,0 +1,392 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Successor,predecessor and distance tables of every character of one sequence.
+ * All characters are built together,one backward and one forward scan over the sequence.
+ * Tables are shorts,or ints when the last position needs the int coordinate width,the same rule Mlcs uses.
+ * Sparse tables keep only the occurrences of each character and the rank of every 64th position,
+ * a lookup scans the few occurrences after the sampled rank,so the memory no longer grows with the alphabet.
+ * The tables are shared by every problem containing the sequence and must not be modified.
+ * <p>
+ * File layout(big endian):magic "MSEQ",version,positions and chars(with both dummy dots),
+ * alphabet size and alphabet,a sparse flag,then the occurrence count and occurrences of each character,
+ * or the table width in bytes and successors,predecessors and distances of each character.
+ */
+public final class SequenceTables {
+  public static final int Magic = 0x4D534551;
+  public static final int Version = 3;
+  // positions of a sampled block
+  static final int SampleBits = 6;
+
+  // positions including both dummy dots
+  final int length;
+  // distinct characters in ascending order
+  final char[] alphabet;
+  final Width width;
+  // char->position,in shorts or in ints by the width
+  final short[][] successors, predecessors, distances;
+  final int[][] intSuccessors, intPredecessors, intDistances;
+  // char->ascending positions and char->block->occurrences before the block,only for sparse tables
+  final int[][] occurrences, samples;
+
+  private SequenceTables(int length, char[] alphabet, int[][][] tables) {
+    this.length = length;
+    this.alphabet = alphabet;
+    this.width = width(length);
+    this.occurrences = this.samples = null;
+    if (width == Width.Short) {
+      this.successors = narrow(tables[0]);
+      this.predecessors = narrow(tables[1]);
+      this.distances = narrow(tables[2]);
+      this.intSuccessors = this.intPredecessors = this.intDistances = null;
+    } else {
+      this.successors = this.predecessors = this.distances = null;
+      this.intSuccessors = tables[0];
+      this.intPredecessors = tables[1];
+      this.intDistances = tables[2];
+    }
+  }
+
+  private SequenceTables(int length, char[] alphabet, int[][] occurrences) {
+    this.length = length;
+    this.alphabet = alphabet;
+    this.width = Width.Int;
+    this.successors = this.predecessors = this.distances = null;
+    this.intSuccessors = this.intPredecessors = this.intDistances = null;
+    this.occurrences = occurrences;
+    this.samples = new int[alphabet.length][((length - 1) >>> SampleBits) + 1];
+    for (int i = 0; i < alphabet.length; i++) {
+      int[] occ = occurrences[i];
+      int[] sample = samples[i];
+      int k = 0;
+      for (int b = 0; b < sample.length; b++) {
+        while (k < occ.length && occ[k] < (b << SampleBits)) k += 1;
+        sample[b] = k;
+      }
+    }
+  }
+
+  public boolean sparse() {
+    return null != occurrences;
+  }
+
+  /**
+   * Index of the character in these tables,or -1 if the sequence does not contain it
+   */
+  public int index(char c) {
+    int i = Arrays.binarySearch(alphabet, c);
+    return i < 0 ? -1 : i;
+  }
+
+  /**
+   * Occurrences of the indexed character at positions 1..p,only for sparse tables
+   */
+  private int rank(int i, int p) {
+    int[] occ = occurrences[i];
+    int k = samples[i][p >>> SampleBits];
+    while (k < occ.length && occ[k] <= p) k += 1;
+    return k;
+  }
+
+  /**
+   * Successor of the position for the indexed character,-1 if none
+   */
+  public int successor(int i, int p) {
+    if (null != occurrences) {
+      int k = rank(i, p);
+      return k < occurrences[i].length ? occurrences[i][k] : -1;
+    }
+    return null == successors ? intSuccessors[i][p] : successors[i][p];
+  }
+
+  /**
+   * Predecessor of the position for the indexed character,0 if none
+   */
+  public int predecessor(int i, int p) {
+    if (null != occurrences) {
+      if (p == 0) return -1;
+      int k = rank(i, p - 1);
+      return k > 0 ? occurrences[i][k - 1] : 0;
+    }
+    return null == predecessors ? intPredecessors[i][p] : predecessors[i][p];
+  }
+
+  /**
+   * Occurrences of the indexed character after the position
+   */
+  public int distance(int i, int p) {
+    if (null != occurrences) return occurrences[i].length - rank(i, p);
+    return null == distances ? intDistances[i][p] : distances[i][p];
+  }
+
+  /**
+   * Successors of the character,-1 if none,only for short tables
+   */
+  public short[] successors(char c) {
+    int i = Arrays.binarySearch(alphabet, c);
+    if (i >= 0 && null != occurrences) return narrow(expand(i, 0));
+    if (i >= 0) return narrowTables(successors)[i];
+    short[] absent = new short[length];
+    Arrays.fill(absent, (short) -1);
+    return absent;
+  }
+
+  /**
+   * Predecessors of the character,0 if none,only for short tables
+   */
+  public short[] predecessors(char c) {
+    int i = Arrays.binarySearch(alphabet, c);
+    if (i >= 0 && null != occurrences) return narrow(expand(i, 1));
+    if (i >= 0) return narrowTables(predecessors)[i];
+    short[] absent = new short[length];
+    absent[0] = -1;
+    return absent;
+  }
+
+  /**
+   * Occurrences of the character after every position,only for short tables
+   */
+  public short[] distances(char c) {
+    int i = Arrays.binarySearch(alphabet, c);
+    if (i >= 0 && null != occurrences) return narrow(expand(i, 2));
+    return i >= 0 ? narrowTables(distances)[i] : new short[length];
+  }
+
+  /**
+   * Successors in ints,short and sparse tables are expanded into a copy
+   */
+  public int[] intSuccessors(char c) {
+    int i = Arrays.binarySearch(alphabet, c);
+    if (i >= 0 && null != occurrences) return expand(i, 0);
+    if (i >= 0) return null == intSuccessors ? widen(successors[i]) : intSuccessors[i];
+    int[] absent = new int[length];
+    Arrays.fill(absent, -1);
+    return absent;
+  }
+
+  public int[] intPredecessors(char c) {
+    int i = Arrays.binarySearch(alphabet, c);
+    if (i >= 0 && null != occurrences) return expand(i, 1);
+    if (i >= 0) return null == intPredecessors ? widen(predecessors[i]) : intPredecessors[i];
+    int[] absent = new int[length];
+    absent[0] = -1;
+    return absent;
+  }
+
+  public int[] intDistances(char c) {
+    int i = Arrays.binarySearch(alphabet, c);
+    if (i >= 0 && null != occurrences) return expand(i, 2);
+    if (i >= 0) return null == intDistances ? widen(distances[i]) : intDistances[i];
+    return new int[length];
+  }
+
+  /**
+   * Bytes occupied by the tables
+   */
+  public long memory() {
+    // every character has the same sample blocks,none for an empty alphabet
+    if (null != occurrences) return 4L * (length - 2) + 4L * alphabet.length * (((length - 1) >>> SampleBits) + 1);
+    return 3L * alphabet.length * length * width.bytes;
+  }
+
+  public static SequenceTables build(Sequence seq) {
+    return build(seq, false);
+  }
+
+  /**
+   * @param sparse occurrence lists instead of dense tables
+   */
+  public static SequenceTables build(Sequence seq, boolean sparse) {
+    int[] codes = seq.codes();
+    int length = codes.length;
+    // code -> table of the characters present,codes are in ascending symbol order
+    int[] counts = seq.codeCounts();
+    int[] indexes = new int[counts.length];
+    int count = 0;
+    for (int c = 0; c < counts.length; c++) indexes[c] = counts[c] > 0 ? count++ : -1;
+    char[] alphabet = new char[count];
+    for (int c = 0; c < counts.length; c++) {
+      if (indexes[c] >= 0) alphabet[indexes[c]] = seq.alphabet.symbol(c);
+    }
+    if (sparse) {
+      int[][] occurrences = new int[count][];
+      for (int c = 0; c < counts.length; c++) {
+        if (indexes[c] >= 0) occurrences[indexes[c]] = new int[counts[c]];
+      }
+      int[] sizes = new int[count];
+      for (int p = 1; p < length - 1; p++) {
+        int i = indexes[codes[p]];
+        occurrences[i][sizes[i]++] = p;
+      }
+      return new SequenceTables(length, alphabet, occurrences);
+    }
+
+    int[][] successors = new int[count][length];
+    int[][] predecessors = new int[count][length];
+    int[][] distances = new int[count][length];
+    int[] nexts = new int[count];
+    int[] remains = new int[count];
+    Arrays.fill(nexts, -1);
+    for (int p = length - 1; p >= 0; p--) {
+      for (int i = 0; i < count; i++) {
+        successors[i][p] = nexts[i];
+        distances[i][p] = remains[i];
+      }
+      if (p > 0 && p < length - 1) {
+        int i = indexes[codes[p]];
+        nexts[i] = p;
+        remains[i] += 1;
+      }
+    }
+    int[] prevs = new int[count];
+    for (int p = 1; p < length; p++) {
+      if (p > 1) prevs[indexes[codes[p - 1]]] = p - 1;
+      for (int i = 0; i < count; i++) predecessors[i][p] = prevs[i];
+    }
+    for (int i = 0; i < count; i++) predecessors[i][0] = -1;
+    return new SequenceTables(length, alphabet, new int[][][]{successors, predecessors, distances});
+  }
+
+  /**
+   * Write the tables of the sequence
+   */
+  public void write(Path path, Sequence seq) throws IOException {
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+      out.writeInt(Magic);
+      out.writeInt(Version);
+      out.writeInt(length);
+      for (int p = 0; p < length; p++) out.writeChar(seq.charAt(p));
+      out.writeInt(alphabet.length);
+      for (char c : alphabet) out.writeChar(c);
+      out.writeBoolean(null != occurrences);
+      if (null != occurrences) {
+        for (int[] occ : occurrences) {
+          out.writeInt(occ.length);
+          for (int p : occ) out.writeInt(p);
+        }
+      } else if (width == Width.Short) {
+        out.writeByte(width.bytes);
+        for (short[][] tables : new short[][][]{successors, predecessors, distances}) {
+          for (short[] table : tables) {
+            for (short s : table) out.writeShort(s);
+          }
+        }
+      } else {
+        out.writeByte(width.bytes);
+        for (int[][] tables : new int[][][]{intSuccessors, intPredecessors, intDistances}) {
+          for (int[] table : tables) {
+            for (int s : table) out.writeInt(s);
+          }
+        }
+      }
+    }
+    Files.move(tmp, path, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Tables read from the path,or null if the file is not of the sequence
+   */
+  public static SequenceTables read(Path path, Sequence seq) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+    if (buffer.getInt() != Magic || buffer.getInt() != Version) return null;
+    int length = buffer.getInt();
+    if (length != seq.length() + 1) return null;
+    for (int p = 0; p < length; p++) {
+      if (buffer.getChar() != seq.charAt(p)) return null;
+    }
+    char[] alphabet = new char[buffer.getInt()];
+    for (int i = 0; i < alphabet.length; i++) alphabet[i] = buffer.getChar();
+    if (buffer.get() != 0) {
+      int[][] occurrences = new int[alphabet.length][];
+      for (int i = 0; i < alphabet.length; i++) {
+        occurrences[i] = new int[buffer.getInt()];
+        for (int k = 0; k < occurrences[i].length; k++) occurrences[i][k] = buffer.getInt();
+      }
+      return new SequenceTables(length, alphabet, occurrences);
+    }
+    Width width = Width.of(buffer.get());
+    int[][][] tables = new int[3][alphabet.length][length];
+    for (int[][] table : tables) {
+      for (int[] t : table) {
+        for (int p = 0; p < length; p++) t[p] = width == Width.Short ? buffer.getShort() : buffer.getInt();
+      }
+    }
+    return new SequenceTables(length, alphabet, tables);
+  }
+
+  /**
+   * Dense successors(0),predecessors(1) or distances(2) of the indexed character
+   */
+  private int[] expand(int i, int table) {
+    int[] rs = new int[length];
+    for (int p = 0; p < length; p++) {
+      rs[p] = table == 0 ? successor(i, p) : (table == 1 ? predecessor(i, p) : distance(i, p));
+    }
+    return rs;
+  }
+
+  /**
+   * Int for positions beyond the short coordinate width,otherwise short(bytes are kept in shorts)
+   */
+  static Width width(int length) {
+    return Width.of(length - 1) == Width.Int ? Width.Int : Width.Short;
+  }
+
+  private short[][] narrowTables(short[][] tables) {
+    if (null == tables) throw new IllegalStateException("The tables of a sequence longer than 32K are ints");
+    return tables;
+  }
+
+  private short[] narrow(int[] table) {
+    if (width(length) == Width.Int) {
+      throw new IllegalStateException("The tables of a sequence longer than 32K are ints");
+    }
+    short[] s = new short[table.length];
+    for (int p = 0; p < table.length; p++) s[p] = (short) table[p];
+    return s;
+  }
+
+  private static short[][] narrow(int[][] tables) {
+    short[][] rs = new short[tables.length][];
+    for (int i = 0; i < tables.length; i++) {
+      int[] t = tables[i];
+      short[] s = new short[t.length];
+      for (int p = 0; p < t.length; p++) s[p] = (short) t[p];
+      rs[i] = s;
+    }
+    return rs;
+  }
+
+  private static int[] widen(short[] table) {
+    int[] rs = new int[table.length];
+    for (int p = 0; p < table.length; p++) rs[p] = table[p];
+    return rs;
+  }
+}
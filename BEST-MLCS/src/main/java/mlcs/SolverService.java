@@ -0,0 +1,190 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import mlcs.util.Stopwatch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resident solver on a local http port,built models are cached between requests.
+ * <p>
+ * POST /solve with a plain text body:lines of key=value are options,other non empty lines are the sequences.
+ * Options are minReserved,dominance=false,layout=jagged|interleaved|vector|sparse,bound=distance|pairwise and limit=1,
+ * the count of mlcs strings to return.
+ * The response is key=value lines of length,count,nodes,created,cached,buildMillis,searchMillis
+ * followed by one mlcs=... line per returned string.A bad request gets status 400 and an error=... line.
+ * <p>
+ * GET /stats reports the cache and job counters.
+ * Every request runs on one thread of a fixed pool,so the pool size bounds the concurrent searches.
+ */
+public class SolverService {
+
+  public static void main(String[] args) throws IOException {
+    Map<String, String> arguments = new HashMap<>();
+    for (String arg : args) {
+      int eqIndx = arg.indexOf('=');
+      if (eqIndx < 0) {
+        System.out.println("Usage:SolverService [port=8519] [threads=0] [cache=MB]");
+        return;
+      }
+      arguments.put(arg.substring(0, eqIndx).trim(), arg.substring(eqIndx + 1).trim());
+    }
+    int port = Integer.parseInt(arguments.getOrDefault("port", "8519"));
+    int threads = Integer.parseInt(arguments.getOrDefault("threads", "0"));
+    long cache = Long.parseLong(arguments.getOrDefault("cache", "512")) << 20;
+    var service = new SolverService(new MlcsCache(cache));
+    service.start(port, threads);
+    System.out.println("mlcs solver listening on " + service.server.getAddress());
+  }
+
+  private final MlcsCache cache;
+  private HttpServer server;
+  private ExecutorService executor;
+
+  public final AtomicLong solved = new AtomicLong();
+  public final AtomicLong failed = new AtomicLong();
+
+  public SolverService(MlcsCache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * Listen on the loopback address
+   *
+   * @param threads concurrent requests,0 for the available processors
+   */
+  public void start(int port, int threads) throws IOException {
+    int workers = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    executor = Executors.newFixedThreadPool(workers);
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    server.createContext("/solve", this::solve);
+    server.createContext("/stats", this::stats);
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  public void stop() {
+    server.stop(0);
+    executor.shutdown();
+  }
+
+  public InetSocketAddress address() {
+    return server.getAddress();
+  }
+
+  private void solve(HttpExchange exchange) throws IOException {
+    if (!exchange.getRequestMethod().equals("POST")) {
+      reply(exchange, 405, "error=use POST\n");
+      return;
+    }
+    String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    Map<String, String> options = new HashMap<>();
+    List<String> seqs = new ArrayList<>();
+    for (String line : body.split("\r?\n")) {
+      line = line.trim();
+      if (line.isEmpty()) continue;
+      int eqIndx = line.indexOf('=');
+      if (eqIndx > 0) options.put(line.substring(0, eqIndx).trim(), line.substring(eqIndx + 1).trim());
+      else seqs.add(line);
+    }
+    try {
+      if (seqs.size() < 2) throw new IllegalArgumentException("need at least two sequences");
+      String response = solve(seqs.toArray(new String[0]), options);
+      solved.incrementAndGet();
+      reply(exchange, 200, response);
+    } catch (IllegalArgumentException e) {
+      failed.incrementAndGet();
+      reply(exchange, 400, "error=" + e.getMessage() + "\n");
+    } catch (RuntimeException | OutOfMemoryError e) {
+      failed.incrementAndGet();
+      reply(exchange, 500, "error=" + e.getClass().getSimpleName() + ":" + e.getMessage() + "\n");
+    }
+  }
+
+  /**
+   * Solve the sequences with the request options
+   */
+  String solve(String[] strs, Map<String, String> options) {
+    long startAt = System.currentTimeMillis();
+    var layout = SuccessorTables.Layout.of(options.getOrDefault("layout", "jagged"));
+    boolean pairwise = options.getOrDefault("bound", "distance").equals("pairwise");
+    boolean dominance = Boolean.parseBoolean(options.getOrDefault("dominance", "false"));
+    long limit = Long.parseLong(options.getOrDefault("limit", "1"));
+    var entry = cache.get(strs, layout, pairwise);
+    Mlcs mlcs = entry.mlcs;
+    boolean cached = entry.cached;
+    long buildTime = System.currentTimeMillis() - startAt;
+
+    long searchAt = System.currentTimeMillis();
+    int minReserved = Integer.parseInt(options.getOrDefault("minReserved", String.valueOf(mlcs.maxLength)));
+    var lb = LowerBoundEstimator.estimate(mlcs, minReserved, null, false, LowerBoundEstimator.Scorer.Sum);
+    var search = new BestMLCS(mlcs, lb, dominance);
+    search.verbose = false;
+    Graph graph = search.search();
+    graph.cleanup();
+    Result result = graph.stat(graph.created(), graph.created(), startAt);
+    long searchTime = System.currentTimeMillis() - searchAt;
+
+    StringBuilder sb = new StringBuilder();
+    sb.append("length=").append(result.maxLevel).append('\n');
+    // dominance pruning drops some paths,the count is unknown
+    sb.append("count=").append(search.pruned > 0 ? "" : result.mlcsCount.toString()).append('\n');
+    sb.append("nodes=").append(result.nodeCount).append('\n');
+    sb.append("created=").append(result.totalCreateCount).append('\n');
+    sb.append("cached=").append(cached).append('\n');
+    sb.append("buildMillis=").append(buildTime).append('\n');
+    sb.append("searchMillis=").append(searchTime).append('\n');
+    Iterator<String> iter = graph.mlcs(0, limit).iterator();
+    while (iter.hasNext()) sb.append("mlcs=").append(iter.next()).append('\n');
+    System.out.println("solved " + strs.length + " sequences(length " + result.maxLevel + ") using "
+      + Stopwatch.format(System.currentTimeMillis() - startAt) + (cached ? ",cached tables" : ""));
+    return sb.toString();
+  }
+
+  private void stats(HttpExchange exchange) throws IOException {
+    String response = "models=" + cache.size() + "\n" + "memory=" + cache.memory() + "\n"
+      + "hits=" + cache.hits() + "\n" + "misses=" + cache.misses() + "\n" + "evictions=" + cache.evictions() + "\n"
+      + "solved=" + solved.get() + "\n" + "failed=" + failed.get() + "\n";
+    reply(exchange, 200, response);
+  }
+
+  private static void reply(HttpExchange exchange, int status, String response) throws IOException {
+    byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+}
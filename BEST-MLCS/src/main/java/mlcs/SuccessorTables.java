@@ -0,0 +1,412 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.util.List;
+
+/**
+ * Successor and distance tables of all sequences.
+ * Successors beyond the max length are stored as -1,so a probe only checks the sign.
+ * Tables are shorts,problems of int width use the Wide tables whatever the layout.
+ * Problems whose dense tables would take too much of the heap use the Sparse tables whatever the layout.
+ */
+public abstract class SuccessorTables {
+
+  public enum Layout {
+    /** char->seq->position,one array for every character and sequence */
+    Jagged,
+    /** seq->position*charCount+char,all characters of a position share a cache line */
+    Interleaved,
+    /** Interleaved with jdk.incubator.vector kernels,falls back to Interleaved when the module is absent */
+    Vector,
+    /** occurrence lists with sampled ranks,for large alphabets over long sequences */
+    Sparse;
+
+    public static Layout of(String name) {
+      for (Layout l : values()) {
+        if (l.name().equalsIgnoreCase(name)) return l;
+      }
+      throw new IllegalArgumentException("Unknown table layout " + name);
+    }
+  }
+
+  public final int charCount;
+  public final int seqCount;
+
+  protected SuccessorTables(int charCount, int seqCount) {
+    this.charCount = charCount;
+    this.seqCount = seqCount;
+  }
+
+  public abstract Layout layout();
+
+  /**
+   * Write all successors of the current location into the rows of buffer
+   *
+   * @return the count of successors
+   */
+  public abstract int nextLocations(int[] current, int[][] buffer);
+
+  /**
+   * Sum of the minimum remaining count of each character
+   */
+  public abstract int tailUpbound(int[] index);
+
+  /**
+   * Bytes of the dense successor,predecessor and distance tables of the sequences
+   */
+  public static long denseMemory(int charCount, List<Sequence> seqs) {
+    long positions = 0;
+    int maxLength = 0;
+    for (Sequence s : seqs) {
+      positions += s.length() + 1;
+      maxLength = Math.max(maxLength, s.length());
+    }
+    return 3L * charCount * positions * (maxLength > Short.MAX_VALUE ? 4 : 2);
+  }
+
+  /**
+   * Whether the problem uses sparse tables,either asked for or when the dense ones need more than an eighth of the heap
+   */
+  public static boolean sparse(Layout layout, int charCount, List<Sequence> seqs) {
+    return layout == Layout.Sparse || denseMemory(charCount, seqs) > Runtime.getRuntime().maxMemory() / 8;
+  }
+
+  public static SuccessorTables build(Layout layout, Width width, Alphabet chars, List<Sequence> seqs,
+                                      int maxLength) {
+    if (layout == Layout.Sparse) return new Sparse(chars, seqs, maxLength);
+    if (width == Width.Int) return new Wide(chars, seqs, maxLength);
+    if (layout == Layout.Vector) {
+      try {
+        Class<?> clazz = Class.forName("mlcs.VectorTables");
+        return (SuccessorTables) clazz.getConstructor(Alphabet.class, List.class, int.class)
+          .newInstance(chars, seqs, maxLength);
+      } catch (ReflectiveOperationException | LinkageError e) {
+        System.out.println("Vector tables are unavailable(run with --add-modules jdk.incubator.vector),"
+          + "using interleaved tables");
+        return new Interleaved(chars, seqs, maxLength);
+      }
+    }
+    if (layout == Layout.Interleaved) return new Interleaved(chars, seqs, maxLength);
+    else return new Jagged(chars, seqs, maxLength);
+  }
+
+  /**
+   * Successors of the sequence tables,copied only when some of them are beyond the max length
+   */
+  static short[] successors(Sequence seq, char c, int maxLength) {
+    short[] successors = seq.tables().successors(c);
+    if (seq.length() - 1 <= maxLength) return successors;
+    successors = successors.clone();
+    for (int i = 0; i < successors.length; i++) {
+      if (successors[i] > maxLength) successors[i] = -1;
+    }
+    return successors;
+  }
+
+  static final class Jagged extends SuccessorTables {
+    final short[][][] successorTable; // char->seq->table
+    final short[][][] distanceTable;// char->seq->table
+
+    Jagged(Alphabet chars, List<Sequence> seqs, int maxLength) {
+      super(chars.size(), seqs.size());
+      successorTable = new short[charCount][seqCount][];
+      distanceTable = new short[charCount][seqCount][];
+      for (int i = 0; i < charCount; i++) {
+        char c = chars.symbol(i);
+        for (int j = 0; j < seqCount; j++) {
+          successorTable[i][j] = successors(seqs.get(j), c, maxLength);
+          distanceTable[i][j] = seqs.get(j).tables().distances(c);
+        }
+      }
+    }
+
+    @Override
+    public Layout layout() {
+      return Layout.Jagged;
+    }
+
+    @Override
+    public int nextLocations(int[] current, int[][] buffer) {
+      int count = 0;
+      for (int i = 0; i < charCount; i++) {
+        short[][] table = successorTable[i];
+        int[] tmp = buffer[count];
+        int j = 0;
+        while (j < seqCount) {
+          short successor = table[j][current[j]];
+          if (successor < 0) break;
+          tmp[j] = successor;
+          j += 1;
+        }
+        if (j == seqCount) count += 1;
+      }
+      return count;
+    }
+
+    @Override
+    public int tailUpbound(int[] index) {
+      int bound = 0;
+      for (int i = 0; i < charCount; i++) {
+        short[][] table = distanceTable[i];
+        short minOfChar = Short.MAX_VALUE;
+        for (int j = 0; j < seqCount; j++) {
+          short d = table[j][index[j]];
+          if (d < minOfChar) minOfChar = d;
+        }
+        bound += minOfChar;
+      }
+      return bound;
+    }
+  }
+
+  /**
+   * Entries of all characters at one position are adjacent.
+   * The positions of a location differ in every sequence,so a probe still touches one line per sequence,
+   * but these lines are shared by all characters instead of one line per character and sequence.
+   */
+  static class Interleaved extends SuccessorTables {
+    final short[][] successorTable; // seq->position*charCount+char
+    final short[][] distanceTable; // seq->position*charCount+char
+    final ThreadLocal<short[]> mins; // per thread minimums of each character
+
+    Interleaved(Alphabet chars, List<Sequence> seqs, int maxLength) {
+      super(chars.size(), seqs.size());
+      mins = ThreadLocal.withInitial(() -> new short[charCount]);
+      successorTable = new short[seqCount][];
+      distanceTable = new short[seqCount][];
+      for (int j = 0; j < seqCount; j++) {
+        Sequence seq = seqs.get(j);
+        int length = seq.length() + 1;
+        short[] successors = new short[length * charCount];
+        short[] distances = new short[length * charCount];
+        for (int i = 0; i < charCount; i++) {
+          char c = chars.symbol(i);
+          short[] s = successors(seq, c, maxLength);
+          short[] d = seq.tables().distances(c);
+          for (int p = 0; p < length; p++) {
+            successors[p * charCount + i] = s[p];
+            distances[p * charCount + i] = d[p];
+          }
+        }
+        successorTable[j] = successors;
+        distanceTable[j] = distances;
+      }
+    }
+
+    @Override
+    public Layout layout() {
+      return Layout.Interleaved;
+    }
+
+    @Override
+    public int nextLocations(int[] current, int[][] buffer) {
+      for (int j = 0; j < seqCount; j++) {
+        short[] table = successorTable[j];
+        int base = current[j] * charCount;
+        for (int i = 0; i < charCount; i++) {
+          buffer[i][j] = table[base + i];
+        }
+      }
+      // move the rows without a missing successor to the front
+      int count = 0;
+      for (int i = 0; i < charCount; i++) {
+        int[] row = buffer[i];
+        int j = 0;
+        while (j < seqCount && row[j] >= 0) j += 1;
+        if (j == seqCount) {
+          if (count != i) {
+            buffer[i] = buffer[count];
+            buffer[count] = row;
+          }
+          count += 1;
+        }
+      }
+      return count;
+    }
+
+    @Override
+    public int tailUpbound(int[] index) {
+      short[] mins = this.mins.get();
+      short[] table = distanceTable[0];
+      int base = index[0] * charCount;
+      for (int i = 0; i < charCount; i++) {
+        mins[i] = table[base + i];
+      }
+      for (int j = 1; j < seqCount; j++) {
+        table = distanceTable[j];
+        base = index[j] * charCount;
+        for (int i = 0; i < charCount; i++) {
+          short d = table[base + i];
+          if (d < mins[i]) mins[i] = d;
+        }
+      }
+      int bound = 0;
+      for (int i = 0; i < charCount; i++) {
+        bound += mins[i];
+      }
+      return bound;
+    }
+  }
+
+  /**
+   * Jagged tables of ints,for sequences longer than Short.MAX_VALUE
+   */
+  static final class Wide extends SuccessorTables {
+    final int[][][] successorTable; // char->seq->table
+    final int[][][] distanceTable;// char->seq->table
+
+    Wide(Alphabet chars, List<Sequence> seqs, int maxLength) {
+      super(chars.size(), seqs.size());
+      successorTable = new int[charCount][seqCount][];
+      distanceTable = new int[charCount][seqCount][];
+      for (int i = 0; i < charCount; i++) {
+        char c = chars.symbol(i);
+        for (int j = 0; j < seqCount; j++) {
+          Sequence seq = seqs.get(j);
+          int[] successors = seq.tables().intSuccessors(c);
+          if (seq.length() - 1 > maxLength) {
+            successors = successors.clone();
+            for (int p = 0; p < successors.length; p++) {
+              if (successors[p] > maxLength) successors[p] = -1;
+            }
+          }
+          successorTable[i][j] = successors;
+          distanceTable[i][j] = seq.tables().intDistances(c);
+        }
+      }
+    }
+
+    @Override
+    public Layout layout() {
+      return Layout.Jagged;
+    }
+
+    @Override
+    public int nextLocations(int[] current, int[][] buffer) {
+      int count = 0;
+      for (int i = 0; i < charCount; i++) {
+        int[][] table = successorTable[i];
+        int[] tmp = buffer[count];
+        int j = 0;
+        while (j < seqCount) {
+          int successor = table[j][current[j]];
+          if (successor < 0) break;
+          tmp[j] = successor;
+          j += 1;
+        }
+        if (j == seqCount) count += 1;
+      }
+      return count;
+    }
+
+    @Override
+    public int tailUpbound(int[] index) {
+      int bound = 0;
+      for (int i = 0; i < charCount; i++) {
+        int[][] table = distanceTable[i];
+        int minOfChar = Integer.MAX_VALUE;
+        for (int j = 0; j < seqCount; j++) {
+          int d = table[j][index[j]];
+          if (d < minOfChar) minOfChar = d;
+        }
+        bound += minOfChar;
+      }
+      return bound;
+    }
+  }
+
+  /**
+   * Lookups into the sparse sequence tables,for the alphabets too large for dense tables.
+   * Works for every width,as the occurrences are ints.
+   */
+  static final class Sparse extends SuccessorTables {
+    final SequenceTables[] tables; // seq->tables
+    final int[][] indexes; // char->seq->index in the sequence tables,-1 if the sequence lacks the char
+    final int maxLength;
+
+    Sparse(Alphabet chars, List<Sequence> seqs, int maxLength) {
+      super(chars.size(), seqs.size());
+      this.maxLength = maxLength;
+      tables = new SequenceTables[seqCount];
+      for (int j = 0; j < seqCount; j++) tables[j] = seqs.get(j).tables(true);
+      indexes = new int[charCount][seqCount];
+      for (int i = 0; i < charCount; i++) {
+        for (int j = 0; j < seqCount; j++) indexes[i][j] = tables[j].index(chars.symbol(i));
+      }
+    }
+
+    @Override
+    public Layout layout() {
+      return Layout.Sparse;
+    }
+
+    @Override
+    public int nextLocations(int[] current, int[][] buffer) {
+      int count = 0;
+      for (int i = 0; i < charCount; i++) {
+        int[] index = indexes[i];
+        int[] tmp = buffer[count];
+        int j = 0;
+        while (j < seqCount) {
+          if (index[j] < 0) break;
+          int successor = tables[j].successor(index[j], current[j]);
+          if (successor < 0 || successor > maxLength) break;
+          tmp[j] = successor;
+          j += 1;
+        }
+        if (j == seqCount) count += 1;
+      }
+      return count;
+    }
+
+    @Override
+    public int tailUpbound(int[] location) {
+      int bound = 0;
+      for (int i = 0; i < charCount; i++) {
+        int[] index = indexes[i];
+        int minOfChar = Integer.MAX_VALUE;
+        for (int j = 0; j < seqCount && minOfChar > 0; j++) {
+          int d = index[j] < 0 ? 0 : tables[j].distance(index[j], location[j]);
+          if (d < minOfChar) minOfChar = d;
+        }
+        bound += minOfChar;
+      }
+      return bound;
+    }
+
+    /**
+     * Same as Mlcs.prevLocations,without the dense predecessor tables
+     */
+    int prevLocations(int[] current, int[][] buffer) {
+      int count = 0;
+      for (int i = 0; i < charCount; i++) {
+        int[] index = indexes[i];
+        int[] row = buffer[count];
+        boolean found = true;
+        for (int j = 0; j < seqCount && found; j++) {
+          row[j] = index[j] < 0 ? 0 : tables[j].predecessor(index[j], current[j]);
+          found = row[j] > 0;
+        }
+        if (found) count += 1;
+      }
+      return count;
+    }
+  }
+}
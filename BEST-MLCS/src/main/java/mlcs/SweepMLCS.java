@@ -0,0 +1,205 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import mlcs.util.Generator;
+import mlcs.util.Stopwatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * End to end benchmark over a grid of generated problems.
+ * Problems are written into dir/in,solved one at a time by BatchMLCS in this JVM with results in dir/out,
+ * and every problem gets one report row with the median wall time of the rounds.
+ * The report is a csv in grid order,so reports of two versions can be diffed or compared with the compare command.
+ */
+public class SweepMLCS {
+
+  static final String Header = "problem,family,length,count,alphabet,seed,mlcsLength,mlcsCount,nodes,created,"
+    + "buildMillis,searchMillis,wallMillis,peakHeapMB,error";
+
+  public static void main(String[] args) throws Exception {
+    if (args.length == 0) {
+      System.out.println("Usage:SweepMLCS /path/to/directory [length=100,200] [count=3,4] [alphabet=4,20]"
+        + " [family=random,mutated,repetitive] [seed=1] [mutation=0.1] [period=8] [rounds=1]"
+        + " [layout=jagged|interleaved|vector|sparse] [dominance=false] [bound=distance|pairwise]"
+        + " [report=/path/to/report.csv]");
+      System.out.println("       SweepMLCS compare /path/to/old.csv /path/to/new.csv");
+      return;
+    }
+    if (args[0].equals("compare") && args.length == 3) {
+      compare(new File(args[1]), new File(args[2]));
+      return;
+    }
+    Map<String, String> arguments = new HashMap<>();
+    arguments.put("length", "100,200");
+    arguments.put("count", "3,4");
+    arguments.put("alphabet", "4,20");
+    arguments.put("family", "random,mutated,repetitive");
+    for (int i = 1; i < args.length; i++) {
+      String arg = args[i];
+      int eqIndx = arg.indexOf('=');
+      arguments.put(arg.substring(0, eqIndx).trim(), arg.substring(eqIndx + 1).trim());
+    }
+    File dir = new File(args[0]);
+    File report = new File(arguments.getOrDefault("report", new File(dir, "report.csv").getPath()));
+
+    var sweep = new SweepMLCS();
+    sweep.rounds = Integer.parseInt(arguments.getOrDefault("rounds", "1"));
+    sweep.batch.threads = 1;
+    sweep.batch.layout = SuccessorTables.Layout.of(arguments.getOrDefault("layout", "jagged"));
+    sweep.batch.dominance = Boolean.parseBoolean(arguments.getOrDefault("dominance", "false"));
+    sweep.batch.pairwise = arguments.getOrDefault("bound", "distance").equals("pairwise");
+    System.out.println("java " + System.getProperty("java.version") + ",max heap "
+      + (Runtime.getRuntime().maxMemory() >> 20) + "MB");
+    long startAt = System.currentTimeMillis();
+    List<String> rows = new ArrayList<>();
+    for (Generator g : Generator.grid(arguments)) {
+      String row = sweep.run(g, new File(dir, "in"));
+      rows.add(row);
+      System.out.println(row);
+    }
+    report.getAbsoluteFile().getParentFile().mkdirs();
+    try (PrintWriter out = new PrintWriter(report, "UTF-8")) {
+      out.println(Header);
+      for (String row : rows) out.println(row);
+    }
+    System.out.println("swept " + rows.size() + " problems using "
+      + Stopwatch.format(System.currentTimeMillis() - startAt) + ",report " + report);
+  }
+
+  // solves every problem on a single thread
+  public final BatchMLCS batch = new BatchMLCS();
+  // runs of each problem,the median wall time is reported
+  public int rounds = 1;
+
+  /**
+   * Generate and solve one problem
+   *
+   * @return the report row
+   */
+  public String run(Generator g, File inputDir) throws IOException {
+    File file = g.write(inputDir);
+    BatchMLCS.Row[] runs = new BatchMLCS.Row[rounds];
+    long peak = 0;
+    for (int r = 0; r < rounds; r++) {
+      resetPeakHeap();
+      runs[r] = batch.solve(file);
+      peak = Math.max(peak, peakHeap());
+      if (null != runs[r].error) {
+        runs = Arrays.copyOf(runs, r + 1);
+        break;
+      }
+    }
+    Arrays.sort(runs, (a, b) -> Long.compare(a.totalTime, b.totalTime));
+    BatchMLCS.Row row = runs[runs.length / 2];
+    return g.fileName() + "," + g.family.name().toLowerCase() + "," + g.length + "," + g.count + ","
+      + g.alphabet.length() + "," + g.seed + "," + row.length + "," + row.count + "," + row.nodes + ","
+      + row.created + "," + row.buildTime + "," + row.searchTime + "," + row.totalTime + "," + (peak >> 20) + ","
+      + (null == row.error ? "" : '"' + row.error.replace('"', '\'') + '"');
+  }
+
+  /**
+   * Collect the garbage of the last problem,then restart the peak of every heap pool.
+   * A shared sequence cache is dropped first,its tables of earlier problems would make the peak depend on grid order.
+   */
+  static void resetPeakHeap() {
+    SequenceCache.setShared(null);
+    System.gc();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+    }
+  }
+
+  /**
+   * Sum of the peak usage of every heap pool,an upper bound of the peak heap as the pools peak at different times
+   */
+  static long peakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+    }
+    return peak;
+  }
+
+  /**
+   * Print the wall time and peak heap ratios of the problems in both reports,
+   * and flag the problems whose mlcs length,count or node count changed
+   */
+  static void compare(File oldReport, File newReport) throws IOException {
+    Map<String, String[]> olds = readReport(oldReport);
+    Map<String, String[]> news = readReport(newReport);
+    int wall = columnOf("wallMillis"), heap = columnOf("peakHeapMB");
+    System.out.printf("%-32s %10s %10s %7s %8s %8s %7s%n", "problem", "old ms", "new ms", "ratio", "old MB", "new MB",
+      "ratio");
+    for (Map.Entry<String, String[]> e : news.entrySet()) {
+      String[] o = olds.get(e.getKey());
+      String[] n = e.getValue();
+      if (null == o) {
+        System.out.printf("%-32s only in %s%n", e.getKey(), newReport.getName());
+        continue;
+      }
+      String changed = "";
+      for (String column : new String[]{"mlcsLength", "mlcsCount", "nodes", "error"}) {
+        int c = columnOf(column);
+        if (!o[c].equals(n[c])) changed += " " + column + " " + o[c] + "->" + n[c];
+      }
+      System.out.printf("%-32s %10s %10s %7s %8s %8s %7s%s%n", e.getKey(), o[wall], n[wall], ratio(o[wall], n[wall]),
+        o[heap], n[heap], ratio(o[heap], n[heap]), changed.isEmpty() ? "" : " CHANGED" + changed);
+    }
+    for (String problem : olds.keySet()) {
+      if (!news.containsKey(problem)) System.out.printf("%-32s only in %s%n", problem, oldReport.getName());
+    }
+  }
+
+  private static int columnOf(String column) {
+    return Arrays.asList(Header.split(",")).indexOf(column);
+  }
+
+  private static String ratio(String older, String newer) {
+    double o = Double.parseDouble(older);
+    return o == 0 ? "-" : String.format("%.2f", Double.parseDouble(newer) / o);
+  }
+
+  /**
+   * Rows of a report keyed by problem,the error column may hold commas inside its quotes
+   */
+  private static Map<String, String[]> readReport(File report) throws IOException {
+    Map<String, String[]> rows = new LinkedHashMap<>();
+    int columns = Header.split(",").length;
+    for (String line : Files.readAllLines(report.toPath())) {
+      if (line.isEmpty() || line.startsWith("problem,")) continue;
+      String[] cells = line.split(",", columns);
+      rows.put(cells[0], cells);
+    }
+    return rows;
+  }
+}
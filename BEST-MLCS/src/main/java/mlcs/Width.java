@@ -0,0 +1,78 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Storage width of the coordinates of a problem,chosen by the longest sequence.
+ * Coordinates are ints while computing and stored in the narrowest width,bytes are unsigned.
+ */
+public enum Width {
+  Byte(1, 255), Short(2, java.lang.Short.MAX_VALUE), Int(4, Integer.MAX_VALUE);
+
+  public final int bytes;
+  // the largest coordinate
+  public final int max;
+
+  Width(int bytes, int max) {
+    this.bytes = bytes;
+    this.max = max;
+  }
+
+  /**
+   * The narrowest width holding the given coordinate
+   */
+  public static Width of(int maxCoord) {
+    if (maxCoord <= Byte.max) return Byte;
+    else if (maxCoord <= Short.max) return Short;
+    else return Int;
+  }
+
+  public static Width of(byte bytes) {
+    for (Width w : values()) {
+      if (w.bytes == bytes) return w;
+    }
+    throw new IllegalArgumentException("Unknown coordinate width " + bytes);
+  }
+
+  public int get(ByteBuffer buffer, int offset) {
+    switch (this) {
+      case Byte:
+        return buffer.get(offset) & 0xFF;
+      case Short:
+        return buffer.getShort(offset);
+      default:
+        return buffer.getInt(offset);
+    }
+  }
+
+  public void put(ByteBuffer buffer, int value) {
+    switch (this) {
+      case Byte:
+        buffer.put((byte) value);
+        break;
+      case Short:
+        buffer.putShort((short) value);
+        break;
+      default:
+        buffer.putInt(value);
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs.util;
+
+import mlcs.BestMLCS;
+import mlcs.BidirectionalMLCS;
+import mlcs.Graph;
+import mlcs.LowerBoundEstimator;
+import mlcs.Mlcs;
+import mlcs.Result;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Differential check of the bidirectional search against the default search.
+ * Random problems of unequal sequence lengths are solved by both,the mlcs length and count must agree.
+ * A few problems put a sequence around the short/int coordinate width,
+ * where the tables and the problem must pick the same width.
+ */
+public class EngineCheck {
+
+  public static void main(String[] args) {
+    Map<String, String> arguments = new HashMap<>();
+    for (String arg : args) {
+      int eqIndx = arg.indexOf('=');
+      if (eqIndx < 0) {
+        System.out.println("Usage:EngineCheck [problems=300] [count=3] [alphabet=4] [maxLength=40] [seed=1]");
+        return;
+      }
+      arguments.put(arg.substring(0, eqIndx).trim(), arg.substring(eqIndx + 1).trim());
+    }
+    int problems = Integer.parseInt(arguments.getOrDefault("problems", "300"));
+    int count = Integer.parseInt(arguments.getOrDefault("count", "3"));
+    String alphabet = Generator.alphabet(Integer.parseInt(arguments.getOrDefault("alphabet", "4")));
+    int maxLength = Integer.parseInt(arguments.getOrDefault("maxLength", "40"));
+    Random random = new Random(Long.parseLong(arguments.getOrDefault("seed", "1")));
+    int mismatches = 0;
+    for (int i = 0; i < problems; i++) {
+      String[] strs = new String[count];
+      for (int j = 0; j < count; j++) strs[j] = random(random, alphabet, 1 + random.nextInt(maxLength));
+      String mismatch = check(strs);
+      if (null != mismatch) {
+        mismatches += 1;
+        System.out.println(mismatch + " " + String.join(" ", strs));
+      }
+    }
+    for (int size = Short.MAX_VALUE - 2; size <= Short.MAX_VALUE + 1; size++) {
+      String[] strs = new String[count];
+      strs[0] = random(random, alphabet, size);
+      for (int j = 1; j < count; j++) strs[j] = random(random, alphabet, 1 + random.nextInt(maxLength));
+      String mismatch;
+      try {
+        mismatch = check(strs);
+      } catch (RuntimeException e) {
+        mismatch = e.toString();
+      }
+      if (null != mismatch) {
+        mismatches += 1;
+        System.out.println(mismatch + " with a sequence of length " + size);
+      }
+      problems += 1;
+    }
+    System.out.println(mismatches + " mismatches in " + problems + " problems");
+    if (mismatches > 0) System.exit(1);
+  }
+
+  private static String random(Random random, String alphabet, int length) {
+    char[] chars = new char[length];
+    for (int p = 0; p < length; p++) chars[p] = alphabet.charAt(random.nextInt(alphabet.length()));
+    return new String(chars);
+  }
+
+  /**
+   * @return the disagreement,or null if both searches find the same length and count
+   */
+  public static String check(String[] strs) {
+    Mlcs mlcs = Mlcs.build(strs);
+    int lb = LowerBoundEstimator.estimate(mlcs, mlcs.maxLength, null, false, LowerBoundEstimator.Scorer.Sum);
+    var best = new BestMLCS(mlcs, lb);
+    best.verbose = false;
+    Graph graph = best.search();
+    graph.cleanup();
+    Result expected = graph.stat(graph.created(), graph.created(), 0);
+
+    var bidirectional = new BidirectionalMLCS(mlcs, lb);
+    bidirectional.verbose = false;
+    graph = bidirectional.search();
+    Result actual = graph.stat(graph.created(), graph.created(), 0);
+    if (expected.maxLevel == actual.maxLevel && expected.mlcsCount.equals(actual.mlcsCount)) return null;
+    return "default " + expected.maxLevel + "/" + expected.mlcsCount + ",bidirectional " + actual.maxLevel + "/"
+      + actual.mlcsCount;
+  }
+}
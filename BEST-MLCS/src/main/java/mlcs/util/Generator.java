@@ -0,0 +1,219 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Seeded synthetic problems,named length_count_alphabet.txt like the test resources.
+ * Non default families,seeds,mutation rates and periods are appended to the name,so every setting gets its own file.
+ * Random sequences are uniform,mutated ones are copies of a common random ancestor with substitutions and indels,
+ * repetitive ones are mutated copies of an ancestor repeating a short motif.
+ * Every problem is seeded by the seed and its own parameters,so it does not depend on the rest of the grid.
+ */
+public class Generator {
+
+  public enum Family {
+    Random, Mutated, Repetitive;
+
+    public static Family of(String name) {
+      for (Family f : values()) {
+        if (f.name().equalsIgnoreCase(name)) return f;
+      }
+      throw new IllegalArgumentException("Unknown sequence family " + name);
+    }
+  }
+
+  static final String Dna = "ACGT";
+  static final String Protein = "ACDEFGHIKLMNPQRSTVWY";
+  static final String Letters = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+  static final long DefaultSeed = 1;
+  static final double DefaultMutation = 0.1;
+  static final int DefaultPeriod = 8;
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.out.println("Usage:Generator /path/to/directory [length=1000] [count=3] [alphabet=4]"
+        + " [family=random|mutated|repetitive] [seed=1] [mutation=0.1] [period=8]");
+      System.out.println("length,count,alphabet and family accept comma separated values,"
+        + "every combination is written.");
+      return;
+    }
+    Map<String, String> arguments = new HashMap<>();
+    for (int i = 1; i < args.length; i++) {
+      String arg = args[i];
+      int eqIndx = arg.indexOf('=');
+      arguments.put(arg.substring(0, eqIndx).trim(), arg.substring(eqIndx + 1).trim());
+    }
+    File dir = new File(args[0]);
+    for (Generator g : grid(arguments)) {
+      File file = g.write(dir);
+      System.out.println("generate " + file.getPath());
+    }
+  }
+
+  /**
+   * Generators of every combination of the comma separated length,count,alphabet and family arguments
+   */
+  public static List<Generator> grid(Map<String, String> arguments) {
+    long seed = Long.parseLong(arguments.getOrDefault("seed", String.valueOf(DefaultSeed)));
+    double mutation = Double.parseDouble(arguments.getOrDefault("mutation", String.valueOf(DefaultMutation)));
+    int period = Integer.parseInt(arguments.getOrDefault("period", String.valueOf(DefaultPeriod)));
+    List<Generator> generators = new ArrayList<>();
+    for (String family : arguments.getOrDefault("family", "random").split(",")) {
+      for (String alphabet : arguments.getOrDefault("alphabet", "4").split(",")) {
+        for (String count : arguments.getOrDefault("count", "3").split(",")) {
+          for (String length : arguments.getOrDefault("length", "1000").split(",")) {
+            var g = new Generator(Family.of(family.trim()), Integer.parseInt(length.trim()),
+              Integer.parseInt(count.trim()), Integer.parseInt(alphabet.trim()), seed);
+            g.mutation = mutation;
+            g.period = period;
+            generators.add(g);
+          }
+        }
+      }
+    }
+    return generators;
+  }
+
+  public final Family family;
+  public final int length;
+  public final int count;
+  // symbols of the sequences
+  public final String alphabet;
+  public final long seed;
+  // probability of a substitution,insertion or deletion at each ancestor position
+  public double mutation = DefaultMutation;
+  // motif length of the repetitive family
+  public int period = DefaultPeriod;
+
+  public Generator(Family family, int length, int count, int alphabetSize, long seed) {
+    if (length < 1 || count < 2) throw new IllegalArgumentException("Need at least two sequences of one character");
+    this.family = family;
+    this.length = length;
+    this.count = count;
+    this.alphabet = alphabet(alphabetSize);
+    this.seed = seed;
+  }
+
+  /**
+   * DNA for 4 symbols,amino acids for 20,otherwise the first letters and digits
+   */
+  public static String alphabet(int size) {
+    if (size == 4) return Dna;
+    else if (size == 20) return Protein;
+    else if (size >= 1 && size <= Letters.length()) return Letters.substring(0, size);
+    else throw new IllegalArgumentException("Alphabet size should be in [1," + Letters.length() + "]");
+  }
+
+  public String[] generate() {
+    // the ordinal keeps the seed stable across runs,unlike the hash code of the enum
+    long mixed = (((seed * 31 + family.ordinal()) * 31 + alphabet.length()) * 31 + count) * 31 + length;
+    Random random = new Random(mixed);
+    String[] strs = new String[count];
+    if (family == Family.Random) {
+      for (int i = 0; i < count; i++) strs[i] = uniform(random, length);
+      return strs;
+    }
+    String ancestor;
+    if (family == Family.Mutated) {
+      ancestor = uniform(random, length);
+    } else {
+      String motif = uniform(random, Math.min(period, length));
+      StringBuilder sb = new StringBuilder(length + motif.length());
+      while (sb.length() < length) sb.append(motif);
+      ancestor = sb.substring(0, length);
+    }
+    for (int i = 0; i < count; i++) strs[i] = mutate(random, ancestor);
+    return strs;
+  }
+
+  /**
+   * Name following the resource files,the family is appended except for random problems,
+   * then the seed(_s),mutation rate(_m) and motif period(_p) when they differ from the defaults and apply to the family
+   */
+  public String fileName() {
+    StringBuilder name = new StringBuilder();
+    name.append(length).append('_').append(count).append('_').append(alphabet.length());
+    if (family != Family.Random) name.append('_').append(family.name().toLowerCase());
+    if (seed != DefaultSeed) name.append("_s").append(seed);
+    if (family != Family.Random && mutation != DefaultMutation) name.append("_m").append(mutation);
+    if (family == Family.Repetitive && period != DefaultPeriod) name.append("_p").append(period);
+    return name.append(".txt").toString();
+  }
+
+  /**
+   * Write the sequences one per line into the directory
+   */
+  public File write(File dir) throws IOException {
+    dir.mkdirs();
+    File file = new File(dir, fileName());
+    Files.write(file.toPath(), String.join("\n", generate()).getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private String uniform(Random random, int size) {
+    char[] chars = new char[size];
+    for (int i = 0; i < size; i++) chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+    return new String(chars);
+  }
+
+  /**
+   * A copy of the ancestor with equally likely substitutions,insertions and deletions,
+   * cut or padded with random symbols to the ancestor length
+   */
+  private String mutate(Random random, String ancestor) {
+    StringBuilder sb = new StringBuilder(ancestor.length() + 16);
+    for (int p = 0; p < ancestor.length(); p++) {
+      char c = ancestor.charAt(p);
+      if (random.nextDouble() >= mutation) {
+        sb.append(c);
+        continue;
+      }
+      switch (random.nextInt(3)) {
+        case 0:
+          if (alphabet.length() > 1) {
+            char s = c;
+            while (s == c) s = alphabet.charAt(random.nextInt(alphabet.length()));
+            sb.append(s);
+          } else {
+            sb.append(c);
+          }
+          break;
+        case 1:
+          sb.append(alphabet.charAt(random.nextInt(alphabet.length()))).append(c);
+          break;
+        default:
+          // deleted
+      }
+    }
+    if (sb.length() > ancestor.length()) sb.setLength(ancestor.length());
+    while (sb.length() < ancestor.length()) sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+    return sb.toString();
+  }
+}
@@ -19,12 +19,10 @@
 package mlcs.util;
 
 import mlcs.Graph;
-import mlcs.Node;
 import mlcs.Result;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.ArrayList;
 import java.util.HashMap;
 
 /**
@@ -149,17 +147,17 @@ public class Painter {
       Graph graph = result.graph;
       if (drawHr) g.drawLine(2, 2, getWidth(), 2);
       int startY = getHeight() / 2;
-      HashMap<Node, Integer> preIndexes = new HashMap<>();
-      for (short layer = 1; layer <= graph.maxLevel; layer++) {
-        ArrayList<Node> layerNodes = new ArrayList<>(graph.layers[layer].values());
-        HashMap<Node, Integer> indexes = new HashMap<>();
+      HashMap<Integer, Integer> preIndexes = new HashMap<>();
+      for (int layer = 1; layer <= graph.maxLevel; layer++) {
+        int[] layerNodes = graph.getLevel(layer);
+        HashMap<Integer, Integer> indexes = new HashMap<>();
         int i = 0;
-        for (Node n : layerNodes) {
+        for (int n : layerNodes) {
           indexes.put(n, i++);
         }
         i = 0;
         int preX = (layer - 1) * hGap - 30;
-        for (Node ln : layerNodes) {
+        for (int ln : layerNodes) {
           int x = layer * hGap - 30;
           int y = startY + (i++) * vGap - ((indexes.size() - 1) * vGap / 2 + 10);
           int fontY = y + nodeHeight - 5;
@@ -167,16 +165,16 @@ public class Painter {
           g.setFont(nodeFont);
           g.fillOval(x, y, 20, 20);
           g.setColor(Color.BLACK);
-          g.drawString(String.valueOf(graph.mlcs.charAt(ln)), x + 7, fontY);
+          g.drawString(String.valueOf(graph.charAt(ln)), x + 7, fontY);
           g.setFont(locFont);
-          String locstr = ln.toString();
+          String locstr = graph.store.toString(ln);
           if (locstr.length() > 10) {
             locstr = locstr.substring(0, 10) + "..)";
           }
           g.drawString(locstr, x - 5, fontY + 15);
 
           int preSize = preIndexes.size();
-          for (Node preLoc : ln.precs) {
+          for (int preLoc : graph.store.precs(ln)) {
             if (preIndexes.containsKey(preLoc)) {
               int k = preIndexes.get(preLoc);
               Color color = (k == 0 && i == 1) ? Color.red : Color.black;
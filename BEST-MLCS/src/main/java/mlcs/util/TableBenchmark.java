@@ -0,0 +1,104 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs.util;
+
+import mlcs.Mlcs;
+import mlcs.NodeIndex;
+import mlcs.NodeStore;
+import mlcs.SuccessorTables;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Compare the successor table layouts.
+ * Key points are sampled along a beam from start to end,then every layout
+ * generates the successors of the samples and bounds each successor.
+ */
+public class TableBenchmark {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.out.println("Usage:TableBenchmark /path/to/your/data/file [beam=500] [rounds=5]");
+      return;
+    }
+    int beam = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+    int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+    String[] data = Mlcs.loadData(new File(args[0]));
+    SuccessorTables.Layout[] layouts = SuccessorTables.Layout.values();
+    Mlcs[] models = new Mlcs[layouts.length];
+    for (int i = 0; i < layouts.length; i++) {
+      models[i] = Mlcs.build(data, layouts[i]);
+    }
+    NodeStore samples = sample(models[0], beam);
+    System.out.println("sampled " + samples.size() + " key points");
+    for (int r = 0; r < rounds; r++) {
+      for (int i = 0; i < layouts.length; i++) {
+        long startAt = System.nanoTime();
+        long checksum = probe(models[i], samples);
+        long nanos = System.nanoTime() - startAt;
+        System.out.printf("round %d %-12s %8.1f ns/point (checksum %d)%n", r, layouts[i],
+          (double) nanos / samples.size(), checksum);
+      }
+    }
+  }
+
+  /**
+   * Successors and their upbounds of all samples
+   */
+  static long probe(Mlcs mlcs, NodeStore samples) {
+    int[] current = new int[samples.dimension];
+    int[][] nexts = mlcs.newBuffer();
+    long checksum = 0;
+    for (int h = 0; h < samples.size(); h++) {
+      int count = mlcs.nextLocations(samples.coords(h, current), nexts);
+      for (int i = 0; i < count; i++) {
+        checksum += mlcs.tailUpbound(nexts[i]) + nexts[i][0];
+      }
+    }
+    return checksum;
+  }
+
+  /**
+   * Key points of every level,at most beam points a level.
+   */
+  public static NodeStore sample(Mlcs mlcs, int beam) {
+    int dimension = mlcs.seqs.size();
+    NodeStore samples = new NodeStore(dimension, mlcs.width);
+    NodeIndex index = new NodeIndex(samples);
+    int[] current = new int[dimension];
+    int[][] nexts = mlcs.newBuffer();
+    samples.add(mlcs.start.id, 0);
+    int from = 0;
+    int to = samples.size();
+    int level = 0;
+    while (from < to) {
+      level += 1;
+      for (int h = from; h < to; h++) {
+        int count = mlcs.nextLocations(samples.coords(h, current), nexts);
+        for (int i = 0; i < count && samples.size() - to < beam; i++) {
+          if (index.find(nexts[i]) < 0) index.add(samples.add(nexts[i], level), level);
+        }
+      }
+      from = to;
+      to = samples.size();
+    }
+    return samples;
+  }
+}
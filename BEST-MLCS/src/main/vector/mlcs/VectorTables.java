@@ -0,0 +1,106 @@
+/*
+ * Beangle, Agile Development Scaffold and Toolkits.
+ *
+ * Copyright © 2005, The Beangle Software.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mlcs;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Interleaved tables with SIMD kernels.
+ * The lanes are the characters of one position,so every sequence contributes a contiguous load,
+ * the minimum of all loads gives the tail upbound and the "no successor" check of all characters at once.
+ * Only built by SuccessorTables.build,when jdk.incubator.vector is present.
+ */
+final class VectorTables extends SuccessorTables.Interleaved {
+
+  private final VectorSpecies<Short> species;
+  private final VectorMask<Short> tailMask;
+
+  public VectorTables(Alphabet chars, List<Sequence> seqs, int maxLength) {
+    super(chars, seqs, maxLength);
+    this.species = speciesOf(charCount);
+    // lanes of the characters in the last chunk
+    this.tailMask = species.indexInRange(0, charCount - (charCount - 1) / species.length() * species.length());
+    // pad the tables,so the loads of the last position never run out of the array
+    for (int j = 0; j < seqCount; j++) {
+      successorTable[j] = Arrays.copyOf(successorTable[j], successorTable[j].length + species.length());
+      distanceTable[j] = Arrays.copyOf(distanceTable[j], distanceTable[j].length + species.length());
+    }
+  }
+
+  /**
+   * The smallest species holding all characters
+   */
+  private static VectorSpecies<Short> speciesOf(int charCount) {
+    if (charCount <= 4) return ShortVector.SPECIES_64;
+    else if (charCount <= 8) return ShortVector.SPECIES_128;
+    else if (charCount <= 16 || ShortVector.SPECIES_PREFERRED.length() < 32) return ShortVector.SPECIES_256;
+    else return ShortVector.SPECIES_PREFERRED;
+  }
+
+  @Override
+  public SuccessorTables.Layout layout() {
+    return SuccessorTables.Layout.Vector;
+  }
+
+  @Override
+  public int nextLocations(int[] current, int[][] buffer) {
+    int count = 0;
+    int lanes = species.length();
+    for (int c = 0; c < charCount; c += lanes) {
+      ShortVector min = ShortVector.fromArray(species, successorTable[0], current[0] * charCount + c);
+      for (int j = 1; j < seqCount; j++) {
+        min = min.min(ShortVector.fromArray(species, successorTable[j], current[j] * charCount + c));
+      }
+      VectorMask<Short> valid = min.compare(VectorOperators.GE, (short) 0);
+      if (c + lanes >= charCount) valid = valid.and(tailMask);
+      long bits = valid.toLong();
+      while (bits != 0) {
+        int i = c + Long.numberOfTrailingZeros(bits);
+        int[] row = buffer[count++];
+        for (int j = 0; j < seqCount; j++) {
+          row[j] = successorTable[j][current[j] * charCount + i];
+        }
+        bits &= bits - 1;
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public int tailUpbound(int[] index) {
+    int bound = 0;
+    int lanes = species.length();
+    for (int c = 0; c < charCount; c += lanes) {
+      ShortVector min = ShortVector.fromArray(species, distanceTable[0], index[0] * charCount + c);
+      for (int j = 1; j < seqCount; j++) {
+        min = min.min(ShortVector.fromArray(species, distanceTable[j], index[j] * charCount + c));
+      }
+      // the bound never exceeds the remaining length of a sequence,so adding shorts can not overflow
+      if (c + lanes >= charCount) bound += min.reduceLanes(VectorOperators.ADD, tailMask);
+      else bound += min.reduceLanes(VectorOperators.ADD);
+    }
+    return bound;
+  }
+}